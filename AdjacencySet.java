@@ -0,0 +1,243 @@
+/******************************************************************************
+ *
+ *  The neighbors of one vertex, stored according to how many there are.
+ *
+ *  The <tt>AdjacencySet</tt> class keeps the neighbors of an ordinary
+ *  vertex in a sorted int[], where a lookup is a binary search and an
+ *  insert shifts at most SMALL_LIMIT entries. Once a vertex passes that
+ *  many neighbors, as a celebrity account does, the set turns into an
+ *  IntBitmap, which keeps both lookups and memory low at any degree.
+ *  It turns back into an array if it shrinks below half the limit.
+ *  Neither form boxes its values, and both are visited in increasing
+ *  order.
+ *
+ */
+
+import java.util.*;
+import java.util.function.IntConsumer;
+
+class AdjacencySet {
+   static final int SMALL_LIMIT = 1024;
+   private static final int[] EMPTY = new int[0];
+   private int[] small = EMPTY;   // sorted, first n in use; null once big
+   private int n;
+   private IntBitmap big;
+
+   /**
+    * Returns the number of values in this set.
+    *
+    * @return the number of values in this set
+    */
+   int size() {
+      return big != null ? big.size() : n;
+   }
+
+   /**
+    * Checks whether v is in this set.
+    *
+    * @param  v the value
+    * @return true if v is in the set, false otherwise
+    */
+   boolean contains(int v) {
+      if (big != null)
+         return big.contains(v);
+      return Arrays.binarySearch(small, 0, n, v) >= 0;
+   }
+
+   /**
+    * Adds v to this set.
+    *
+    * @param  v the value
+    * @return true if v was added, false if it was already there
+    */
+   boolean add(int v) {
+      if (big != null)
+         return big.add(v);
+      int k = Arrays.binarySearch(small, 0, n, v);
+      if (k >= 0)
+         return false;
+      if (n == SMALL_LIMIT) {
+         big = new IntBitmap();
+         for (int i = 0; i < n; i++)
+            big.add(small[i]);
+         small = null;
+         return big.add(v);
+      }
+      k = -k - 1;
+      if (n == small.length)
+         small = Arrays.copyOf(small, Math.max(4, Math.min(2 * n, SMALL_LIMIT)));
+      System.arraycopy(small, k, small, k + 1, n - k);
+      small[k] = v;
+      n++;
+      return true;
+   }
+
+   /**
+    * Adds a run of values to this set. An array is merged with the run
+    * in one pass from the back, instead of shifting once per value.
+    * The values that were not in the set yet are moved to the front of
+    * the run, in increasing order.
+    *
+    * @param  values holds the run, which must be increasing
+    * @param  from the index of the first value of the run
+    * @param  to one past the index of the last value of the run
+    * @return the number of values added, which now fill
+    *         values[from] to values[from + added - 1]
+    */
+   int addAllSorted(int[] values, int from, int to) {
+      int added = 0;
+      if (big != null) {
+         for (int k = from; k < to; k++) {
+            if (big.add(values[k]))
+               values[from + added++] = values[k];
+         }
+         return added;
+      }
+      // Keep the values that are new, merging against the array
+      for (int k = from, i = 0; k < to; k++) {
+         while (i < n && small[i] < values[k])
+            i++;
+         if (i == n || small[i] != values[k])
+            values[from + added++] = values[k];
+      }
+      if (added == 0)
+         return 0;
+      if (n + added > SMALL_LIMIT) {
+         big = new IntBitmap();
+         for (int i = 0; i < n; i++)
+            big.add(small[i]);
+         for (int k = from; k < from + added; k++)
+            big.add(values[k]);
+         small = null;
+         return added;
+      }
+      if (n + added > small.length)
+         small = Arrays.copyOf(small, Math.max(4, Math.min(Math.max(2 * n, n + added), SMALL_LIMIT)));
+      // The two are disjoint, so merging from the back overwrites nothing unread
+      int i = n - 1;
+      int k = from + added - 1;
+      for (int slot = n + added - 1; k >= from; slot--)
+         small[slot] = i >= 0 && small[i] > values[k] ? small[i--] : values[k--];
+      n += added;
+      return added;
+   }
+
+   /**
+    * Removes v from this set.
+    *
+    * @param  v the value
+    * @return true if v was removed, false if it was not there
+    */
+   boolean remove(int v) {
+      if (big != null) {
+         if (!big.remove(v))
+            return false;
+         if (big.size() < SMALL_LIMIT / 2) {
+            small = new int[SMALL_LIMIT];
+            n = 0;
+            big.forEach(w -> small[n++] = w);
+            big = null;
+         }
+         return true;
+      }
+      int k = Arrays.binarySearch(small, 0, n, v);
+      if (k < 0)
+         return false;
+      System.arraycopy(small, k + 1, small, k, n - k - 1);
+      n--;
+      return true;
+   }
+
+   /**
+    * Passes every value of this set to the given action,
+    * in increasing order.
+    *
+    * @param action the visitor to call once per value
+    */
+   void forEach(IntConsumer action) {
+      if (big != null) {
+         big.forEach(action);
+         return;
+      }
+      for (int i = 0; i < n; i++)
+         action.accept(small[i]);
+   }
+
+   /**
+    * Counts the values found in both this set and another one.
+    * Two arrays are merged, an array is probed against a bitmap,
+    * and two bitmaps are intersected container by container.
+    *
+    * @param  other the other set
+    * @return the size of the intersection
+    */
+   int intersectionSize(AdjacencySet other) {
+      if (big != null && other.big != null)
+         return big.intersectionSize(other.big);
+      if (big != null)
+         return other.intersectionSize(this);
+      int common = 0;
+      if (other.big != null) {
+         for (int i = 0; i < n; i++) {
+            if (other.big.contains(small[i]))
+               common++;
+         }
+         return common;
+      }
+      for (int i = 0, j = 0; i < n && j < other.n; ) {
+         if (small[i] < other.small[j])
+            i++;
+         else if (small[i] > other.small[j])
+            j++;
+         else {
+            common++;
+            i++;
+            j++;
+         }
+      }
+      return common;
+   }
+
+   /**
+    * Returns a copy of this set as boxed Integers.
+    *
+    * @return a new set holding the same values
+    */
+   Set<Integer> toSet() {
+      Set<Integer> copy = new HashSet<>();
+      forEach(copy::add);
+      return copy;
+   }
+
+   /**
+    * Walks the values of a set in increasing order without allocating.
+    * One walker can be reset to any number of sets.
+    */
+   static class Walker {
+      private final IntBitmap.Walker bitmapWalker = new IntBitmap.Walker();
+      private AdjacencySet set = new AdjacencySet();
+      private int i;
+
+      /**
+       * Positions this walker before the first value of a set.
+       *
+       * @param s the set to walk
+       */
+      void reset(AdjacencySet s) {
+         set = s;
+         i = 0;
+         if (s.big != null)
+            bitmapWalker.reset(s.big);
+      }
+
+      boolean hasNext() {
+         return set.big != null ? bitmapWalker.hasNext() : i < set.n;
+      }
+
+      int next() {
+         if (!hasNext())
+            throw new NoSuchElementException();
+         return set.big != null ? bitmapWalker.next() : set.small[i++];
+      }
+   }
+}
@@ -0,0 +1,300 @@
+/******************************************************************************
+ *
+ *  Betweenness centrality of every vertex of a graph, with Brandes'
+ *  algorithm run in parallel, exactly or from a sample of sources.
+ *
+ *  The <tt>Betweenness</tt> class gives each vertex the sum, over the
+ *  ordered pairs s, t of other vertices, of the fraction of shortest
+ *  s-t paths that go through it. From each source one breadth-first
+ *  search counts the shortest paths to every vertex (sigma). Walking
+ *  back from the farthest vertex then adds up the dependency of the
+ *  source on each vertex (delta):
+ *     delta(v) = sum of sigma(v)/sigma(w) * (1 + delta(w))
+ *  over the w one level below v. Those v are found by scanning the CSR
+ *  in-edges of w for vertices one level up, so no predecessor lists are
+ *  built. That is O(E) per source and O(VE) in all, not cubic.
+ *  The sources are dealt out to one task per thread of the common
+ *  fork/join pool, each taking every P-th one so that costly and cheap
+ *  sources mix. A task has its own primitive buffers and its own
+ *  totals for all its sources, so the memory is O(PV) however many
+ *  sources there are, and only the vertices a search reached are
+ *  reset, so a source costs no more than what it reaches. The totals of
+ *  the tasks are added up once, at the end.
+ *  With a sample of k sources drawn without replacement, the total of
+ *  each vertex is scaled by V/k. The spread of its dependencies over
+ *  the sample gives the standard error of that estimate.
+ *  Vertices are the dense indices of a CompactDiGraph.
+ *
+ */
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+public class Betweenness {
+   private final int V;
+   private final int samples;
+   private final double[] centrality;
+   private final double[] error;      // null when every source was searched
+
+   /**
+    * Computes the exact betweenness of every vertex, searching from
+    * all of them.
+    *
+    * @param g the graph
+    */
+   public Betweenness(CompactDiGraph g) {
+      this(g, allSources(g.vertices()), false);
+   }
+
+   /**
+    * Estimates the betweenness of every vertex from a random sample of
+    * sources. A sample as large as the graph gives the exact values.
+    *
+    * @param  g the graph
+    * @param  samples the number of sources to search from
+    * @param  seed the seed of the random sample
+    * @throws IllegalArgumentException if samples is not positive
+    */
+   public Betweenness(CompactDiGraph g, int samples, long seed) {
+      this(g, sample(g.vertices(), samples, seed), samples < g.vertices());
+   }
+
+   private Betweenness(CompactDiGraph g, int[] sources, boolean sampled) {
+      V = g.vertices();
+      samples = sources.length;
+      int tasks = Math.max(1, Math.min(samples, ForkJoinPool.getCommonPoolParallelism()));
+      double[][] totals = ForkJoinPool.commonPool().invoke(new All(g, sources, sampled, tasks));
+      centrality = totals[0];
+      if (!sampled) {
+         error = null;
+         return;
+      }
+      error = new double[V];
+      double scale = (double) V / samples;
+      // Without replacement, the variance shrinks as the sample nears V
+      double correction = samples > 1 ? (double) (V - samples) / (V - 1) : 1;
+      for (int v = 0; v < V; v++) {
+         double mean = centrality[v] / samples;
+         double variance = samples > 1
+            ? Math.max(0, totals[1][v] - samples * mean * mean) / (samples - 1) : 0;
+         error[v] = V * Math.sqrt(variance / samples * correction);
+         centrality[v] *= scale;
+      }
+   }
+
+   /**
+    * Returns the betweenness of a vertex.
+    *
+    * @param  v the dense index
+    * @return the exact or estimated sum of the fractions of shortest
+    *         paths between other vertices that pass through v
+    */
+   public double centrality(int v) {
+      return centrality[v];
+   }
+
+   /**
+    * Returns the standard error of the betweenness of a vertex.
+    *
+    * @param  v the dense index
+    * @return the standard error, 0 if the value is exact
+    */
+   public double standardError(int v) {
+      return error == null ? 0 : error[v];
+   }
+
+   /**
+    * Returns the number of sources searched from.
+    *
+    * @return the sample size, V if exact
+    */
+   public int samples() {
+      return samples;
+   }
+
+   /**
+    * Checks whether every vertex was searched from.
+    *
+    * @return true if the values are exact
+    */
+   public boolean isExact() {
+      return error == null;
+   }
+
+   /**
+    * Returns the k vertices of highest betweenness, ties going to the
+    * smaller index.
+    *
+    * @param  k the number of vertices wanted
+    * @return at most k indices, highest first
+    */
+   public int[] top(int k) {
+      TopK top = new TopK(Math.min(k, V));
+      for (int v = 0; v < V; v++)
+         top.offer(v, centrality[v]);
+      return top.drain();
+   }
+
+   private static int[] allSources(int V) {
+      int[] sources = new int[V];
+      for (int v = 0; v < V; v++)
+         sources[v] = v;
+      return sources;
+   }
+
+   /*
+      Draws k distinct indices below V with a partial Fisher-Yates
+      shuffle, or all V if k is larger.
+   */
+   private static int[] sample(int V, int k, long seed) {
+      if (k <= 0)
+         throw new IllegalArgumentException("Invalid sample size " + k);
+      int[] sources = allSources(V);
+      if (k >= V)
+         return sources;
+      Random random = new Random(seed);
+      for (int i = 0; i < k; i++) {
+         int j = i + random.nextInt(V - i);
+         int swap = sources[i];
+         sources[i] = sources[j];
+         sources[j] = swap;
+      }
+      int[] chosen = new int[k];
+      System.arraycopy(sources, 0, chosen, 0, k);
+      return chosen;
+   }
+
+   /*
+      Runs one Sources task per thread and adds up their totals.
+   */
+   @SuppressWarnings("serial")
+   private static class All extends RecursiveTask<double[][]> {
+      private final CompactDiGraph g;
+      private final int[] sources;
+      private final boolean squares;
+      private final int tasks;
+
+      All(CompactDiGraph g, int[] sources, boolean squares, int tasks) {
+         this.g = g;
+         this.sources = sources;
+         this.squares = squares;
+         this.tasks = tasks;
+      }
+
+      protected double[][] compute() {
+         Sources[] parts = new Sources[tasks];
+         for (int t = 0; t < tasks; t++)
+            parts[t] = new Sources(g, sources, squares, t, tasks);
+         invokeAll(parts);
+         double[][] totals = parts[0].join();
+         for (int t = 1; t < tasks; t++) {
+            double[][] part = parts[t].join();
+            for (int i = 0; i < totals.length; i++) {
+               for (int v = 0; v < totals[i].length; v++)
+                  totals[i][v] += part[i][v];
+            }
+         }
+         return totals;
+      }
+   }
+
+   /*
+      Searches from every stride-th source, starting at first, with one
+      set of buffers. Returns the totals of the dependencies on every
+      vertex and, when sampling, the totals of their squares.
+   */
+   @SuppressWarnings("serial")
+   private static class Sources extends RecursiveTask<double[][]> {
+      private final CompactDiGraph g;
+      private final int[] sources;
+      private final boolean squares;
+      private final int first;
+      private final int stride;
+
+      Sources(CompactDiGraph g, int[] sources, boolean squares, int first, int stride) {
+         this.g = g;
+         this.sources = sources;
+         this.squares = squares;
+         this.first = first;
+         this.stride = stride;
+      }
+
+      protected double[][] compute() {
+         return new Brandes(g, squares).run(sources, first, stride);
+      }
+   }
+
+   /*
+      The buffers of one task. Between searches dist is -1 and sigma
+      and delta are 0 everywhere.
+   */
+   private static class Brandes {
+      private final CompactDiGraph g;
+      private final int[] dist;
+      private final double[] sigma;     // the number of shortest paths from the source
+      private final double[] delta;     // the dependency of the source on each vertex
+      private final int[] order;        // the vertices in the order they were reached
+      private final double[] sum;
+      private final double[] squares;   // null unless sampling
+
+      Brandes(CompactDiGraph g, boolean sampled) {
+         this.g = g;
+         int V = g.vertices();
+         dist = new int[V];
+         Arrays.fill(dist, -1);
+         sigma = new double[V];
+         delta = new double[V];
+         order = new int[V];
+         sum = new double[V];
+         squares = sampled ? new double[V] : null;
+      }
+
+      double[][] run(int[] sources, int first, int stride) {
+         for (int i = first; i < sources.length; i += stride)
+            search(sources[i]);
+         return squares == null ? new double[][] { sum } : new double[][] { sum, squares };
+      }
+
+      private void search(int s) {
+         int n = 0;
+         order[n++] = s;
+         dist[s] = 0;
+         sigma[s] = 1;
+         for (int head = 0; head < n; head++) {
+            int v = order[head];
+            int d = dist[v] + 1;
+            for (int k = g.firstEdge(v), end = g.firstEdge(v + 1); k < end; k++) {
+               int w = g.target(k);
+               if (dist[w] < 0) {
+                  dist[w] = d;
+                  order[n++] = w;
+               }
+               if (dist[w] == d)
+                  sigma[w] += sigma[v];
+            }
+         }
+         // Farthest first, each vertex passes its dependency up a level
+         for (int i = n - 1; i > 0; i--) {
+            int w = order[i];
+            double share = (1 + delta[w]) / sigma[w];
+            int up = dist[w] - 1;
+            for (int k = g.firstInEdge(w), end = g.firstInEdge(w + 1); k < end; k++) {
+               int v = g.source(k);
+               if (dist[v] == up)
+                  delta[v] += sigma[v] * share;
+            }
+            sum[w] += delta[w];
+            if (squares != null)
+               squares[w] += delta[w] * delta[w];
+         }
+         for (int i = 0; i < n; i++) {
+            int v = order[i];
+            dist[v] = -1;
+            sigma[v] = 0;
+            delta[v] = 0;
+         }
+      }
+   }
+}
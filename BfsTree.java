@@ -0,0 +1,97 @@
+/******************************************************************************
+ *
+ *  The breadth-first search tree of one source vertex.
+ *
+ *  The <tt>BfsTree</tt> class runs a single breadth-first search over a
+ *  CompactDiGraph with BreadthFirst and keeps, for every dense index, its
+ *  distance from the source and the index it was reached from. Any
+ *  number of distance and path questions from that source are then
+ *  answered from the two arrays without searching again.
+ *
+ */
+
+class BfsTree {
+   private final int source;
+   private final int[] dist;   // -1 for vertices the source cannot reach
+   private final int[] prev;   // the vertex before v on a shortest path
+   private final int reached;
+   private final long distanceSum;
+
+   /**
+    * Searches a graph from the given source.
+    *
+    * @param  g the graph
+    * @param  source the dense index to search from
+    * @throws IllegalArgumentException if source is not a valid index
+    */
+   BfsTree(CompactDiGraph g, int source) {
+      this.source = source;
+      prev = new int[g.vertices()];
+      BreadthFirst search = new BreadthFirst(g);
+      dist = search.search(source, prev);
+      reached = search.reached();
+      distanceSum = search.distanceSum();
+   }
+
+   /**
+    * Returns the vertex this tree was grown from.
+    *
+    * @return the source vertex
+    */
+   int source() {
+      return source;
+   }
+
+   /**
+    * Returns the number of vertices this tree covers, reached or not.
+    *
+    * @return the number of vertices
+    */
+   int size() {
+      return dist.length;
+   }
+
+   /**
+    * Returns the number of vertices the source reaches.
+    *
+    * @return the number of reached vertices, the source included
+    */
+   int reached() {
+      return reached;
+   }
+
+   /**
+    * Returns the sum of the distances from the source to the vertices
+    * it reaches.
+    *
+    * @return the total distance
+    */
+   long distanceSum() {
+      return distanceSum;
+   }
+
+   /**
+    * Returns the number of edges on a shortest path from the source to v.
+    *
+    * @param  v the vertex
+    * @return the distance to v, or -1 if v cannot be reached
+    */
+   int distance(int v) {
+      return dist[v];
+   }
+
+   /**
+    * Returns the vertices after the source on a shortest path to v.
+    *
+    * @param  v the vertex
+    * @return the path ending in v, empty if v is the source or unreachable
+    */
+   int[] pathTo(int v) {
+      if (dist[v] <= 0)
+         return new int[0];
+      int[] path = new int[dist[v]];
+      for (int i = path.length - 1, w = v; i >= 0; i--, w = prev[w])
+         path[i] = w;
+      return path;
+   }
+}
@@ -0,0 +1,185 @@
+/******************************************************************************
+ *
+ *  Shortest paths between two given vertices, searched from both ends.
+ *
+ *  The <tt>BidirectionalSearch</tt> class grows one breadth-first search
+ *  forward from the source along the out-edges of a CompactDiGraph and
+ *  another backward from the target along its in-edges. Each round
+ *  expands one whole level of whichever side has the smaller frontier,
+ *  and the search stops at the end of the first level on which the two
+ *  sides meet, keeping the shortest of the paths found there. On a
+ *  small-world graph each side only goes about half the distance, so
+ *  far fewer vertices are touched than by a search from the source
+ *  alone.
+ *  Vertices are dense indices 0..V-1. One instance reuses its arrays for
+ *  every search: a vertex counts as seen only if its mark equals the
+ *  stamp of the current search, so nothing has to be cleared in
+ *  between. Instances are not thread-safe.
+ *
+ */
+
+import java.util.Arrays;
+
+public class BidirectionalSearch {
+   private final CompactDiGraph g;
+   private final int[] forwardMark;     // == stamp once the forward side has seen v
+   private final int[] backwardMark;
+   private final int[] forwardDist;     // distance from the source
+   private final int[] backwardDist;    // distance to the target
+   private final int[] forwardPrev;     // the vertex before v towards the source
+   private final int[] backwardNext;    // the vertex after v towards the target
+   private final int[] forwardQueue;
+   private final int[] backwardQueue;
+   private int stamp;
+   private int visited;
+
+   /**
+    * Initializes a search over the given graph.
+    *
+    * @param g the graph to search
+    */
+   public BidirectionalSearch(CompactDiGraph g) {
+      this.g = g;
+      int V = g.vertices();
+      forwardMark = new int[V];
+      backwardMark = new int[V];
+      forwardDist = new int[V];
+      backwardDist = new int[V];
+      forwardPrev = new int[V];
+      backwardNext = new int[V];
+      forwardQueue = new int[V];
+      backwardQueue = new int[V];
+   }
+
+   /**
+    * Returns the number of edges on a shortest path from source to target.
+    *
+    * @param  source the dense index of the first vertex
+    * @param  target the dense index of the last vertex
+    * @return the distance, or -1 if target cannot be reached
+    * @throws IllegalArgumentException if either index is not valid
+    */
+   public int distance(int source, int target) {
+      int meet = search(source, target);
+      return meet < 0 ? -1 : forwardDist[meet] + backwardDist[meet];
+   }
+
+   /**
+    * Returns a shortest path from source to target.
+    *
+    * @param  source the dense index of the first vertex
+    * @param  target the dense index of the last vertex
+    * @return the vertices after source on the path, ending with target;
+    *         empty if target cannot be reached or is the source
+    * @throws IllegalArgumentException if either index is not valid
+    */
+   public int[] path(int source, int target) {
+      int meet = search(source, target);
+      if (meet < 0)
+         return new int[0];
+      int[] path = new int[forwardDist[meet] + backwardDist[meet]];
+      // Back from the meeting vertex to the source, then on to the target
+      int i = forwardDist[meet] - 1;
+      for (int v = meet; v != source; v = forwardPrev[v])
+         path[i--] = v;
+      i = forwardDist[meet];
+      for (int v = meet; v != target; ) {
+         v = backwardNext[v];
+         path[i++] = v;
+      }
+      return path;
+   }
+
+   /**
+    * Returns the graph this search runs over.
+    *
+    * @return the graph
+    */
+   public CompactDiGraph graph() {
+      return g;
+   }
+
+   /**
+    * Returns the number of vertices the last search touched, counting
+    * each side separately.
+    *
+    * @return the number of vertices visited by the last search
+    */
+   public int visited() {
+      return visited;
+   }
+
+   /*
+      Runs the two searches until they meet. Returns the vertex on a
+      shortest path where they met, or -1 if they never do.
+   */
+   private int search(int source, int target) {
+      validate(source);
+      validate(target);
+      if (++stamp == Integer.MAX_VALUE) {
+         Arrays.fill(forwardMark, 0);
+         Arrays.fill(backwardMark, 0);
+         stamp = 1;
+      }
+      int forwardHead = 0;
+      int forwardTail = 0;
+      int backwardHead = 0;
+      int backwardTail = 0;
+      forwardQueue[forwardTail++] = source;
+      forwardMark[source] = stamp;
+      forwardDist[source] = 0;
+      backwardQueue[backwardTail++] = target;
+      backwardMark[target] = stamp;
+      backwardDist[target] = 0;
+
+      int meet = source == target ? source : -1;
+      int best = meet < 0 ? Integer.MAX_VALUE : 0;
+      while (meet < 0 && forwardHead < forwardTail && backwardHead < backwardTail) {
+         if (forwardTail - forwardHead <= backwardTail - backwardHead) {
+            // One level forward, along out-edges
+            for (int end = forwardTail; forwardHead < end; forwardHead++) {
+               int v = forwardQueue[forwardHead];
+               for (int k = g.firstEdge(v), last = g.firstEdge(v + 1); k < last; k++) {
+                  int w = g.target(k);
+                  if (forwardMark[w] == stamp)
+                     continue;
+                  forwardMark[w] = stamp;
+                  forwardDist[w] = forwardDist[v] + 1;
+                  forwardPrev[w] = v;
+                  forwardQueue[forwardTail++] = w;
+                  if (backwardMark[w] == stamp && forwardDist[w] + backwardDist[w] < best) {
+                     best = forwardDist[w] + backwardDist[w];
+                     meet = w;
+                  }
+               }
+            }
+         }
+         else {
+            // One level backward, along in-edges
+            for (int end = backwardTail; backwardHead < end; backwardHead++) {
+               int v = backwardQueue[backwardHead];
+               for (int k = g.firstInEdge(v), last = g.firstInEdge(v + 1); k < last; k++) {
+                  int w = g.source(k);
+                  if (backwardMark[w] == stamp)
+                     continue;
+                  backwardMark[w] = stamp;
+                  backwardDist[w] = backwardDist[v] + 1;
+                  backwardNext[w] = v;
+                  backwardQueue[backwardTail++] = w;
+                  if (forwardMark[w] == stamp && forwardDist[w] + backwardDist[w] < best) {
+                     best = forwardDist[w] + backwardDist[w];
+                     meet = w;
+                  }
+               }
+            }
+         }
+      }
+      visited = forwardTail + backwardTail;
+      return meet;
+   }
+
+   private void validate(int v) {
+      if (v < 0 || v >= forwardMark.length)
+         throw new IllegalArgumentException("Invalid Vertex " + v);
+   }
+}
@@ -0,0 +1,129 @@
+/******************************************************************************
+ *
+ *  Single-source breadth-first search over a CompactDiGraph.
+ *
+ *  The <tt>BreadthFirst</tt> class finds the distance from one vertex to
+ *  every other in a single O(V+E) pass over the CSR arrays. Vertices are
+ *  dense indices 0..V-1 throughout. One instance owns its distance array
+ *  and queue and reuses them from search to search, clearing only the
+ *  entries the last search touched, so running it from many sources in a
+ *  row costs no allocation. Instances are not thread-safe. The bulk
+ *  method distanceSums searches from every vertex at once, handing the
+ *  work to MultiSourceBfs so that each pass serves many sources.
+ *
+ */
+
+import java.util.Arrays;
+
+public class BreadthFirst {
+   // Longs of search state per vertex in distanceSums: 256 sources per
+   // pass, at 96 bytes per vertex
+   private static final int SUMS_WIDTH = 4;
+
+   private final CompactDiGraph g;
+   private final int[] dist;    // -1 for vertices not reached
+   private final int[] queue;   // the vertices reached, in the order they were found
+   private int reached;         // vertices reached by the last search, the source included
+   private long distanceSum;    // sum of their distances
+
+   /**
+    * Initializes a search over the given graph.
+    *
+    * @param g the graph to search
+    */
+   public BreadthFirst(CompactDiGraph g) {
+      this.g = g;
+      dist = new int[g.vertices()];
+      queue = new int[g.vertices()];
+      Arrays.fill(dist, -1);
+   }
+
+   /**
+    * Returns the distance from a source to every vertex of a graph.
+    *
+    * @param  g the graph to search
+    * @param  source the dense index of the source
+    * @return the distance to each index, -1 where it cannot be reached
+    * @throws IllegalArgumentException if source is not a valid index
+    */
+   public static int[] distances(CompactDiGraph g, int source) {
+      return new BreadthFirst(g).search(source, null);
+   }
+
+   /**
+    * Searches from a source. The distances are kept in an array that
+    * the next search overwrites.
+    *
+    * @param  source the dense index of the source
+    * @param  prev if not null, receives for every reached index the
+    *         index it was reached from; the source is its own
+    * @return the distance to each index, -1 where it cannot be reached
+    * @throws IllegalArgumentException if source is not a valid index
+    */
+   public int[] search(int source, int[] prev) {
+      if (source < 0 || source >= dist.length)
+         throw new IllegalArgumentException("Invalid Vertex " + source);
+      // Only the entries the last search set need clearing
+      for (int i = 0; i < reached; i++)
+         dist[queue[i]] = -1;
+      int head = 0;
+      int tail = 0;
+      long sum = 0;
+      queue[tail++] = source;
+      dist[source] = 0;
+      if (prev != null)
+         prev[source] = source;
+      while (head < tail) {
+         int v = queue[head++];
+         int d = dist[v] + 1;
+         for (int k = g.firstEdge(v), end = g.firstEdge(v + 1); k < end; k++) {
+            int w = g.target(k);
+            if (dist[w] < 0) {
+               dist[w] = d;
+               sum += d;
+               if (prev != null)
+                  prev[w] = v;
+               queue[tail++] = w;
+            }
+         }
+      }
+      reached = tail;
+      distanceSum = sum;
+      return dist;
+   }
+
+   /**
+    * Returns the number of vertices the last search reached.
+    *
+    * @return the number of reached vertices, the source included
+    */
+   public int reached() {
+      return reached;
+   }
+
+   /**
+    * Returns the sum of the distances found by the last search.
+    *
+    * @return the total distance to every reached vertex
+    */
+   public long distanceSum() {
+      return distanceSum;
+   }
+
+   /**
+    * Searches from every vertex of a graph, in parallel on the common
+    * fork/join pool, and records how far each one reaches. The sources
+    * are searched in batches of 256 by MultiSourceBfs, which visits the
+    * edges once per batch rather than once per source.
+    *
+    * @param g the graph to search
+    * @param sums receives, for each index, the sum of its distances
+    *        to the vertices it reaches
+    * @param reached receives, for each index, the number of vertices it
+    *        reaches, itself included
+    * @throws IllegalArgumentException if an array is shorter than V
+    */
+   public static void distanceSums(CompactDiGraph g, long[] sums, int[] reached) {
+      MultiSourceBfs.distanceSums(g, SUMS_WIDTH, sums, reached);
+   }
+}
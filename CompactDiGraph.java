@@ -0,0 +1,529 @@
+/******************************************************************************
+ *
+ *  An immutable directed graph stored in compressed sparse row (CSR) form.
+ *
+ *  The <tt>CompactDiGraph</tt> class is a read-only snapshot of a
+ *  <tt>DiGraph</tt>. Every vertex is given a dense index 0..V-1 (in
+ *  increasing order of its vertex value) and the adjacency lists are
+ *  packed into two primitive arrays:
+ *  - offsets[i] .. offsets[i+1] is the range of the out-edges of index i,
+ *  - targets[k] is the dense index of the head of edge k, sorted per row.
+ *  The in-edges are kept the same way in inOffsets and sources, so the
+ *  graph can be walked against the direction of its edges as well.
+ *  Compared to a Map of HashSets this costs 8 bytes per edge and 12 bytes
+ *  per vertex, both directions included, and a traversal walks contiguous memory.
+ *  The arrays are IntStores, so a graph opened from a GraphFile reads
+ *  them straight out of the mapped file, and toOffHeap() moves them out
+ *  of the Java heap altogether. Such a graph should be closed once it
+ *  is no longer used, which releases its memory at once.
+ *  It offers the same queries as <tt>DiGraph</tt>: the number of vertices
+ *  <em>V</em>, the number of edges <em>E</em>, the adjacent vertices of a
+ *  vertex and a String representation of the Graph.
+ *
+ */
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.*;
+import java.util.function.IntConsumer;
+
+public class CompactDiGraph implements DirectedGraph, AutoCloseable {
+   private static final String NEWLINE = System.getProperty("line.separator");
+   private final int V;
+   private final int E;
+   private final IntStore ids;        // dense index -> vertex value, sorted
+   private final IntStore offsets;    // length V+1
+   private final IntStore targets;    // length E, dense indices
+   private final IntStore inOffsets;  // length V+1
+   private final IntStore sources;    // length E, dense indices
+   private volatile int[] outOrder;   // indices by decreasing out-degree, on demand
+   private volatile int[] inOrder;    // indices by decreasing in-degree, on demand
+
+   /*
+      Wraps arrays that already hold a valid CSR layout in both directions.
+   */
+   CompactDiGraph(IntStore ids, IntStore offsets, IntStore targets, IntStore inOffsets, IntStore sources) {
+      this.V = ids.length();
+      this.E = targets.length();
+      this.ids = ids;
+      this.offsets = offsets;
+      this.targets = targets;
+      this.inOffsets = inOffsets;
+      this.sources = sources;
+   }
+
+   /*
+      Wraps the out-edges of a CSR layout and derives the in-edges from them.
+   */
+   static CompactDiGraph fromOutEdges(IntStore ids, IntStore offsets, IntStore targets) {
+      int[][] in = transpose(offsets, targets);
+      return new CompactDiGraph(ids, offsets, targets, IntStore.wrap(in[0]), IntStore.wrap(in[1]));
+   }
+
+   /*
+      Turns the edges of a CSR layout around. Returns the offsets and
+      the sources of the reversed layout; since tails are visited in
+      increasing order, every reversed row comes out sorted.
+   */
+   private static int[][] transpose(IntStore offsets, IntStore targets) {
+      int V = offsets.length() - 1;
+      int E = targets.length();
+      int[] inOffsets = new int[V + 1];
+      int[] sources = new int[E];
+      // Count the in-edges of each index, then turn the counts into offsets
+      for (int k = 0; k < E; k++)
+         inOffsets[targets.get(k) + 1]++;
+      for (int i = 0; i < V; i++)
+         inOffsets[i + 1] += inOffsets[i];
+      int[] next = Arrays.copyOf(inOffsets, V);
+      for (int i = 0; i < V; i++) {
+         for (int k = offsets.get(i); k < offsets.get(i + 1); k++)
+            sources[next[targets.get(k)]++] = i;
+      }
+      return new int[][] { inOffsets, sources };
+   }
+
+   /**
+    * Builds a compressed sparse row copy of any directed graph.
+    *
+    * @param  g the graph to copy
+    * @return a read-only snapshot of g
+    */
+   public static CompactDiGraph copyOf(DirectedGraph g) {
+      int[] ids = new int[g.vertices()];
+      int[] count = new int[1];
+      g.forEachVertex(v -> ids[count[0]++] = v);
+      Arrays.sort(ids);
+
+      int[] offsets = new int[ids.length + 1];
+      int[] targets = new int[g.edges()];
+      NeighborCursor cursor = g.cursor();
+      int k = 0;
+      for (int i = 0; i < ids.length; i++) {
+         offsets[i] = k;
+         cursor.moveTo(ids[i]);
+         while (cursor.hasNext())
+            targets[k++] = Arrays.binarySearch(ids, cursor.next());
+         // Each row is sorted so that lookups can binary search it
+         Arrays.sort(targets, offsets[i], k);
+      }
+      offsets[ids.length] = k;
+      return fromOutEdges(IntStore.wrap(ids), IntStore.wrap(offsets), IntStore.wrap(targets));
+   }
+
+   /**
+    * Returns the number of vertices in this graph.
+    *
+    * @return the number of vertices in this graph
+    */
+   public int vertices() {
+      return V;
+   }
+
+   /**
+    * Returns the number of edges in this graph.
+    *
+    * @return the number of edges in this graph
+    */
+   public int edges() {
+      return E;
+   }
+
+   /**
+    * Returns the dense index of vertex <tt>v</tt>.
+    *
+    * @param  v the vertex
+    * @return the index of v, between 0 and V-1
+    * @throws IllegalArgumentException if v is not a valid vertex
+    */
+   public int indexOf(int v) {
+      int i = ids.search(0, V, v);
+      if (i < 0)
+         throw new IllegalArgumentException("Invalid Vertex " + v);
+      return i;
+   }
+
+   /**
+    * Checks whether v is a vertex of this graph.
+    *
+    * @param  v the vertex
+    * @return true if v is in the graph, false otherwise
+    */
+   public boolean hasVertex(int v) {
+      return ids.search(0, V, v) >= 0;
+   }
+
+   /**
+    * Checks whether the directed edge v-w is in this graph.
+    * The row of v is sorted, so this is a binary search.
+    *
+    * @param  v the tail of the edge
+    * @param  w the head of the edge
+    * @return true if the edge is in the graph, false otherwise
+    * @throws IllegalArgumentException if v is not a valid vertex
+    */
+   public boolean hasEdge(int v, int w) {
+      int i = indexOf(v);
+      int j = ids.search(0, V, w);
+      return j >= 0 && targets.search(offsets.get(i), offsets.get(i + 1), j) >= 0;
+   }
+
+   /**
+    * Returns the number of edges leaving vertex <tt>v</tt>.
+    *
+    * @param  v the vertex
+    * @return the out-degree of v
+    * @throws IllegalArgumentException if v is not a valid vertex
+    */
+   public int outDegree(int v) {
+      return degreeAt(indexOf(v));
+   }
+
+   /**
+    * Returns the vertex stored at dense index <tt>i</tt>.
+    *
+    * @param  i the index, between 0 and V-1
+    * @return the vertex at index i
+    */
+   public int vertexAt(int i) {
+      return ids.get(i);
+   }
+
+   /**
+    * Returns the number of out-edges of the vertex at index <tt>i</tt>.
+    *
+    * @param  i the index, between 0 and V-1
+    * @return the out-degree of the vertex at index i
+    */
+   public int degreeAt(int i) {
+      return offsets.get(i + 1) - offsets.get(i);
+   }
+
+   /**
+    * Returns the position of the first out-edge of index <tt>i</tt>.
+    * The out-edges of i are the positions firstEdge(i) up to, but not
+    * including, firstEdge(i+1).
+    *
+    * @param  i the index, between 0 and V (inclusive)
+    * @return the position of the first out-edge of i
+    */
+   public int firstEdge(int i) {
+      return offsets.get(i);
+   }
+
+   /**
+    * Returns the dense index of the head of the edge at position <tt>k</tt>.
+    *
+    * @param  k the edge position, between 0 and E-1
+    * @return the index of the vertex the edge points to
+    */
+   public int target(int k) {
+      return targets.get(k);
+   }
+
+   /**
+    * Returns the number of in-edges of the vertex at index <tt>i</tt>.
+    *
+    * @param  i the index, between 0 and V-1
+    * @return the in-degree of the vertex at index i
+    */
+   public int inDegreeAt(int i) {
+      return inOffsets.get(i + 1) - inOffsets.get(i);
+   }
+
+   /**
+    * Returns the position of the first in-edge of index <tt>i</tt>.
+    * The in-edges of i are the positions firstInEdge(i) up to, but not
+    * including, firstInEdge(i+1).
+    *
+    * @param  i the index, between 0 and V (inclusive)
+    * @return the position of the first in-edge of i
+    */
+   public int firstInEdge(int i) {
+      return inOffsets.get(i);
+   }
+
+   /**
+    * Returns the dense index of the tail of the in-edge at position <tt>k</tt>.
+    *
+    * @param  k the in-edge position, between 0 and E-1
+    * @return the index of the vertex the edge comes from
+    */
+   public int source(int k) {
+      return sources.get(k);
+   }
+
+   /**
+    * In-edges are always indexed in this graph.
+    *
+    * @return true
+    */
+   public boolean tracksInEdges() {
+      return true;
+   }
+
+   /**
+    * Returns the number of edges entering vertex <tt>v</tt>.
+    *
+    * @param  v the vertex
+    * @return the in-degree of v
+    * @throws IllegalArgumentException if v is not a valid vertex
+    */
+   public int inDegree(int v) {
+      return inDegreeAt(indexOf(v));
+   }
+
+   /**
+    * Returns the vertices adjacent to vertex <tt>v</tt>.
+    *
+    * @param  v the vertex
+    * @return a set containing the vertices adjacent to vertex <tt>v</tt>
+    * @throws IllegalArgumentException if v is not a valid vertex
+    */
+   public Set<Integer> getAdjacent(int v) {
+      int i = indexOf(v);
+      Set<Integer> neighbors = new HashSet<>();
+      for (int k = offsets.get(i); k < offsets.get(i + 1); k++)
+         neighbors.add(ids.get(targets.get(k)));
+      return neighbors;
+   }
+
+   /**
+    * Passes every vertex of this graph to the given action,
+    * in increasing order.
+    *
+    * @param action the visitor to call once per vertex
+    */
+   public void forEachVertex(IntConsumer action) {
+      for (int i = 0; i < V; i++)
+         action.accept(ids.get(i));
+   }
+
+   /**
+    * Passes every vertex adjacent to <tt>v</tt> to the given action,
+    * in increasing order.
+    *
+    * @param  v the vertex
+    * @param  action the visitor to call once per neighbor
+    * @throws IllegalArgumentException if v is not a valid vertex
+    */
+   public void forEachNeighbor(int v, IntConsumer action) {
+      int i = indexOf(v);
+      for (int k = offsets.get(i); k < offsets.get(i + 1); k++)
+         action.accept(ids.get(targets.get(k)));
+   }
+
+   /**
+    * Returns a cursor over the neighbors of the vertices of this graph.
+    *
+    * @return a new cursor, not yet positioned on any vertex
+    */
+   public NeighborCursor cursor() {
+      return new RowCursor(offsets, targets);
+   }
+
+   /**
+    * Passes every vertex with an edge to <tt>v</tt> to the given action,
+    * in increasing order.
+    *
+    * @param  v the vertex
+    * @param  action the visitor to call once per in-neighbor
+    * @throws IllegalArgumentException if v is not a valid vertex
+    */
+   public void forEachInNeighbor(int v, IntConsumer action) {
+      int i = indexOf(v);
+      for (int k = inOffsets.get(i); k < inOffsets.get(i + 1); k++)
+         action.accept(ids.get(sources.get(k)));
+   }
+
+   /**
+    * Returns a cursor over the in-neighbors of the vertices of this graph.
+    *
+    * @return a new cursor, not yet positioned on any vertex
+    */
+   public NeighborCursor inCursor() {
+      return new RowCursor(inOffsets, sources);
+   }
+
+   /*
+      Walks one row of a CSR layout at a time.
+   */
+   private class RowCursor implements NeighborCursor {
+      private final IntStore rowOffsets;
+      private final IntStore heads;
+      private int k;
+      private int end;
+
+      RowCursor(IntStore rowOffsets, IntStore heads) {
+         this.rowOffsets = rowOffsets;
+         this.heads = heads;
+      }
+
+      public void moveTo(int v) {
+         int i = indexOf(v);
+         k = rowOffsets.get(i);
+         end = rowOffsets.get(i + 1);
+      }
+
+      public boolean hasNext() {
+         return k < end;
+      }
+
+      public int next() {
+         if (k >= end)
+            throw new NoSuchElementException();
+         return ids.get(heads.get(k++));
+      }
+   }
+
+   /**
+    * Returns the k vertices with the most out-edges, ties going to the
+    * smaller vertex. The first call sorts all vertices by degree once;
+    * later calls only read the first k of that order.
+    *
+    * @param  k the number of vertices wanted
+    * @return at most k vertices, highest out-degree first
+    */
+   public int[] topKByOutDegree(int k) {
+      if (outOrder == null)
+         outOrder = byDegree(offsets);
+      return firstVertices(outOrder, k);
+   }
+
+   /**
+    * Returns the k vertices with the most in-edges, ties going to the
+    * smaller vertex. The first call sorts all vertices by degree once;
+    * later calls only read the first k of that order.
+    *
+    * @param  k the number of vertices wanted
+    * @return at most k vertices, highest in-degree first
+    */
+   public int[] topKByInDegree(int k) {
+      if (inOrder == null)
+         inOrder = byDegree(inOffsets);
+      return firstVertices(inOrder, k);
+   }
+
+   /*
+      Sorts the indices by decreasing length of their row, and by
+      increasing index within the same length.
+   */
+   private int[] byDegree(IntStore rowOffsets) {
+      long[] keys = new long[V];
+      for (int i = 0; i < V; i++)
+         keys[i] = ((long) -(rowOffsets.get(i + 1) - rowOffsets.get(i)) << 32) | i;
+      Arrays.parallelSort(keys);
+      int[] order = new int[V];
+      for (int i = 0; i < V; i++)
+         order[i] = (int) keys[i];
+      return order;
+   }
+
+   /*
+      Returns the vertices of the first k indices of an order.
+   */
+   private int[] firstVertices(int[] order, int k) {
+      int[] result = new int[Math.min(k, V)];
+      for (int j = 0; j < result.length; j++)
+         result[j] = ids.get(order[j]);
+      return result;
+   }
+
+   /**
+    * Returns a graph with every edge of this graph turned around.
+    * The vertices keep their dense indices and no arrays are copied,
+    * so the two graphs share their storage.
+    *
+    * @return the reverse of this graph
+    */
+   public CompactDiGraph reverse() {
+      return new CompactDiGraph(ids, inOffsets, sources, offsets, targets);
+   }
+
+   /**
+    * Returns a copy of this graph whose arrays are held in direct
+    * memory, outside the Java heap. The garbage collector does not scan
+    * or move them, so a large graph needs only a small heap. The copy
+    * answers every query the same way, and should be closed when it is
+    * no longer needed.
+    *
+    * @return an off-heap copy of this graph
+    */
+   public CompactDiGraph toOffHeap() {
+      return new CompactDiGraph(IntStore.directCopyOf(ids), IntStore.directCopyOf(offsets),
+         IntStore.directCopyOf(targets), IntStore.directCopyOf(inOffsets), IntStore.directCopyOf(sources));
+   }
+
+   /**
+    * Checks whether the arrays of this graph are outside the Java heap,
+    * either in a mapped file or in direct memory.
+    *
+    * @return true if the graph is held off the heap, false otherwise
+    */
+   public boolean isOffHeap() {
+      return targets.isOffHeap();
+   }
+
+   /**
+    * Releases the direct memory or file mapping behind this graph right
+    * away, instead of when the garbage collector finds it. The graph,
+    * and any graph returned by its reverse(), must not be used after
+    * this, and no other thread may be using it while it is closed.
+    * Does nothing for a graph held on the heap.
+    */
+   public void close() {
+      ids.free();
+      offsets.free();
+      targets.free();
+      inOffsets.free();
+      sources.free();
+   }
+
+   /**
+    * Writes the vertices, offsets, targets, in-offsets and sources
+    * of this graph, in that order.
+    *
+    * @param  out the stream to write to
+    * @throws IOException if the stream cannot be written
+    */
+   void writeTo(DataOutputStream out) throws IOException {
+      ids.writeTo(out);
+      offsets.writeTo(out);
+      targets.writeTo(out);
+      inOffsets.writeTo(out);
+      sources.writeTo(out);
+   }
+
+   /**
+    * Opens a graph saved in a GraphFile. The file is memory-mapped, so
+    * this returns quickly and the edges are read from disk on demand.
+    *
+    * @param  filename the name of the file
+    * @return the graph stored in the file
+    * @throws IOException if the file cannot be read or is not a graph file
+    */
+   public static CompactDiGraph open(String filename) throws IOException {
+      GraphFile file = GraphFile.open(filename);
+      file.closeNames();
+      return file.graph();
+   }
+
+   /**
+    * Returns a string representation of this graph.
+    *
+    * @return the number of vertices <em>V</em>, followed by the number of edges <em>E</em>,
+    *         followed by the <em>V</em> adjacency lists
+    */
+   public String toString() {
+      StringBuilder s = new StringBuilder();
+      s.append(V + " vertices, " + E + " edges " + NEWLINE);
+      for (int i = 0; i < V; i++) {
+         s.append(ids.get(i) + ": ");
+         for (int k = offsets.get(i); k < offsets.get(i + 1); k++) {
+            s.append(ids.get(targets.get(k)) + " ");
+         }
+         s.append(NEWLINE);
+      }
+      return s.toString();
+   }
+}
@@ -0,0 +1,382 @@
+/******************************************************************************
+ *
+ *  A directed graph that many threads can build at the same time.
+ *  Self-loops allowed.
+ *
+ *  The <tt>ConcurrentDiGraph</tt> class has the same operations as
+ *  <tt>DiGraph</tt>, but addVertex and addEdge may be called from any
+ *  number of threads:
+ *  - vertices live in a ConcurrentHashMap, so adding one never blocks,
+ *  - every vertex has its own lock, held only while one of its edges is
+ *    appended, so writers to different vertices never wait for each other,
+ *  - the vertex and edge counters are LongAdders.
+ *  Readers never take a lock to walk a neighbor list. Each row publishes
+ *  its length after its entries, so a reader sees a prefix of the row as
+ *  it was at some moment during the read.
+ *  Every vertex and edge also takes a stamp from one global clock when
+ *  it is added, while holding the lock of its row, and an edge always
+ *  gets a later stamp than both of its vertices. freeze() reads the
+ *  clock once and copies everything stamped up to that point into a
+ *  read-only CompactDiGraph, taking each row's lock only long enough to
+ *  read its length. Writers keep going meanwhile, and whatever they add
+ *  is stamped later and left out, so the copy is the graph exactly as
+ *  it was when freeze read the clock. The stamps cost a long per edge.
+ *
+ */
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntConsumer;
+
+public class ConcurrentDiGraph implements DirectedGraph {
+   private static final String NEWLINE = System.getProperty("line.separator");
+   private static final int[] NO_NEIGHBORS = new int[0];
+   private static final long[] NO_STAMPS = new long[0];
+   // Rows up to this length are scanned instead of hashed
+   private static final int SCAN_LIMIT = 16;
+   private final LongAdder V;
+   private final LongAdder E;
+   private final ConcurrentHashMap<Integer, Row> adj;
+   private final AtomicLong clock = new AtomicLong();   // the last stamp handed out
+
+   /**
+    * Initializes an empty graph
+    */
+   public ConcurrentDiGraph() {
+      this.V = new LongAdder();
+      this.E = new LongAdder();
+      adj = new ConcurrentHashMap<>();
+   }
+
+   /**
+    * Returns the number of vertices in this graph.
+    * While other threads are adding vertices the count may lag behind.
+    *
+    * @return the number of vertices in this graph
+    */
+   public int vertices() {
+      return (int) V.sum();
+   }
+
+   /**
+    * Returns the number of edges in this graph.
+    * While other threads are adding edges the count may lag behind.
+    *
+    * @return the number of edges in this graph
+    */
+   public int edges() {
+      return (int) E.sum();
+   }
+
+   /**
+    * Returns a counter that moves on every vertex or edge added.
+    * Nothing is ever removed, so the two counts together serve;
+    * like them, it may lag behind other threads.
+    *
+    * @return the modification counter of this graph
+    */
+   public long version() {
+      return V.sum() + E.sum();
+   }
+
+   /**
+    * Returns the row of a vertex
+    *
+    * @param  v one vertex in the graph
+    * @return the row holding the neighbors of v
+    * @throws IllegalArgumentException if v is not a valid vertex
+    */
+   private Row rowOf(int v) {
+      Row row = adj.get(v);
+      if (row == null)
+         throw new IllegalArgumentException("Invalid Vertex " + v);
+      return row;
+   }
+
+   /**
+    * Adds the vertex v to this graph. Safe to call from any thread.
+    *
+    * @param  v one vertex in the graph
+    * @return true if v was added, false otherwise
+    */
+   public boolean addVertex(int v) {
+      if (adj.containsKey(v))
+         return false;
+      // The new row is locked until it has its stamp
+      Row row = new Row();
+      synchronized (row) {
+         if (adj.putIfAbsent(v, row) != null)
+            return false;
+         row.stamp = clock.incrementAndGet();
+      }
+      V.increment();
+      return true;
+   }
+
+   /**
+    * Adds the directed edge v-w to this graph. Safe to call from any thread;
+    * only the lock of v is taken.
+    * The arguments must be valid vertices in the graph.
+    * @param  v one vertex in the edge
+    * @param  w the other vertex in the edge
+    * @return true if edge was added, false otherwise
+    * @throws IllegalArgumentException if either vertex does not exist
+    */
+   public boolean addEdge(int v, int w) {
+      Row row = rowOf(v);
+      rowOf(w).stamp();
+      if (!row.add(w, clock))
+         return false;
+      E.increment();
+      return true;
+   }
+
+   /**
+    * Checks whether v is a vertex of this graph.
+    *
+    * @param  v the vertex
+    * @return true if v is in the graph, false otherwise
+    */
+   public boolean hasVertex(int v) {
+      return adj.containsKey(v);
+   }
+
+   /**
+    * Checks whether the directed edge v-w is in this graph.
+    *
+    * @param  v the tail of the edge
+    * @param  w the head of the edge
+    * @return true if the edge is in the graph, false otherwise
+    * @throws IllegalArgumentException if v is not a valid vertex
+    */
+   public boolean hasEdge(int v, int w) {
+      Row row = rowOf(v);
+      synchronized (row) {
+         return row.contains(w);
+      }
+   }
+
+   /**
+    * Returns the number of edges leaving vertex <tt>v</tt>.
+    *
+    * @param  v the vertex
+    * @return the out-degree of v
+    * @throws IllegalArgumentException if v is not a valid vertex
+    */
+   public int outDegree(int v) {
+      return rowOf(v).size;
+   }
+
+   /**
+    * Returns the vertices adjacent to vertex <tt>v</tt>.
+    *
+    * @param  v the vertex
+    * @return a set containing the vertices adjacent to vertex <tt>v</tt>
+    * @throws IllegalArgumentException if v is not a valid vertex
+    */
+   public Set<Integer> getAdjacent(int v) {
+      Set<Integer> neighbors = new HashSet<>();
+      forEachNeighbor(v, neighbors::add);
+      return neighbors;
+   }
+
+   /**
+    * Passes every vertex of this graph to the given action.
+    * Vertices added during the call may or may not be visited.
+    *
+    * @param action the visitor to call once per vertex
+    */
+   public void forEachVertex(IntConsumer action) {
+      for (int v : adj.keySet())
+         action.accept(v);
+   }
+
+   /**
+    * Passes every vertex adjacent to <tt>v</tt> to the given action,
+    * in the order the edges were added. Edges added during the call
+    * are not visited.
+    *
+    * @param  v the vertex
+    * @param  action the visitor to call once per neighbor
+    * @throws IllegalArgumentException if v is not a valid vertex
+    */
+   public void forEachNeighbor(int v, IntConsumer action) {
+      Row row = rowOf(v);
+      int n = row.size;
+      int[] neighbors = row.neighbors;
+      for (int k = 0; k < n; k++)
+         action.accept(neighbors[k]);
+   }
+
+   /**
+    * Returns a cursor over the neighbors of the vertices of this graph.
+    * A cursor sees the edges of a vertex that existed when it was moved there.
+    *
+    * @return a new cursor, not yet positioned on any vertex
+    */
+   public NeighborCursor cursor() {
+      return new RowCursor();
+   }
+
+   /**
+    * Returns an immutable, compressed sparse row copy of this graph,
+    * without stopping the threads that are adding to it.
+    * The copy is the graph as it was at one moment during the call: it
+    * holds every vertex and edge whose add call finished before freeze
+    * was called, and of those added during it, exactly the ones stamped
+    * before that moment.
+    *
+    * @return a read-only copy of this graph
+    */
+   public CompactDiGraph freeze() {
+      long cut = clock.get();
+      // Anything stamped up to cut is in the map by now, and published
+      // once its row's lock has been taken
+      IntDiGraph copy = new IntDiGraph();
+      for (Map.Entry<Integer, Row> entry : adj.entrySet()) {
+         Row row = entry.getValue();
+         int n;
+         int[] neighbors;
+         long[] stamps;
+         synchronized (row) {
+            if (row.stamp > cut)
+               continue;
+            n = row.size;
+            neighbors = row.neighbors;
+            stamps = row.stamps;
+         }
+         int v = entry.getKey();
+         copy.addVertex(v);
+         // Stamps rise along a row, and a head is always stamped before
+         // its edges, so it belongs in the copy too
+         for (int k = 0; k < n && stamps[k] <= cut; k++) {
+            copy.addVertex(neighbors[k]);
+            copy.addEdge(v, neighbors[k]);
+         }
+      }
+      return copy.freeze();
+   }
+
+   /**
+    * Returns a string representation of this graph.
+    *
+    * @return the number of vertices <em>V</em>, followed by the number of edges <em>E</em>,
+    *         followed by the <em>V</em> adjacency lists
+    */
+   public String toString() {
+      return freeze().toString();
+   }
+
+   /*
+      The neighbors of one vertex and the stamps of their edges. Writers
+      hold the lock of the row; readers rely on neighbors and stamps
+      being published before size.
+   */
+   private static class Row {
+      private volatile int[] neighbors = NO_NEIGHBORS;
+      private volatile long[] stamps = NO_STAMPS;
+      private volatile int size;
+      private volatile long stamp;   // of the vertex, 0 until it has one
+      private IntIndexMap seen;      // only for rows longer than SCAN_LIMIT
+
+      // Waits for the stamp of a row that addVertex has just put in the map
+      long stamp() {
+         long s = stamp;
+         if (s == 0) {
+            synchronized (this) {
+               s = stamp;
+            }
+         }
+         return s;
+      }
+
+      synchronized boolean add(int w, AtomicLong clock) {
+         if (contains(w))
+            return false;
+         int n = size;
+         int[] a = neighbors;
+         long[] t = stamps;
+         if (n == a.length) {
+            a = Arrays.copyOf(a, Math.max(4, 2 * n));
+            t = Arrays.copyOf(t, a.length);
+            neighbors = a;
+            stamps = t;
+         }
+         a[n] = w;
+         t[n] = clock.incrementAndGet();
+         size = n + 1;
+         if (seen != null) {
+            seen.put(w, 0);
+         }
+         else if (n + 1 > SCAN_LIMIT) {
+            seen = new IntIndexMap();
+            for (int k = 0; k <= n; k++)
+               seen.put(a[k], 0);
+         }
+         return true;
+      }
+
+      // Callers hold the lock of the row
+      boolean contains(int w) {
+         if (seen != null)
+            return seen.get(w) >= 0;
+         int[] a = neighbors;
+         for (int k = 0; k < size; k++) {
+            if (a[k] == w)
+               return true;
+         }
+         return false;
+      }
+   }
+
+   /*
+      Walks the published prefix of one row at a time.
+   */
+   private class RowCursor implements NeighborCursor {
+      private int[] row = NO_NEIGHBORS;
+      private int k;
+      private int end;
+
+      public void moveTo(int v) {
+         Row r = rowOf(v);
+         end = r.size;
+         row = r.neighbors;
+         k = 0;
+      }
+
+      public boolean hasNext() {
+         return k < end;
+      }
+
+      public int next() {
+         if (k >= end)
+            throw new NoSuchElementException();
+         return row[k++];
+      }
+   }
+
+/*
+   Builds a sample graph from four threads at once.
+*/
+   public static void main(String[] args) throws InterruptedException
+   {
+      ConcurrentDiGraph g = new ConcurrentDiGraph();
+      Thread[] loaders = new Thread[4];
+      for (int t = 0; t < loaders.length; t++) {
+         int first = t;
+         loaders[t] = new Thread(() -> {
+            for (int v = first; v < 100; v += loaders.length) {
+               g.addVertex(v);
+               g.addVertex(v + 1);
+               g.addEdge(v, v + 1);
+            }
+         });
+         loaders[t].start();
+      }
+      for (Thread loader : loaders)
+         loader.join();
+      System.out.println(g.vertices() + " vertices, " + g.edges() + " edges");
+   }
+}
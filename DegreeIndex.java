@@ -0,0 +1,142 @@
+/******************************************************************************
+ *
+ *  The degree of every vertex of a graph, kept sorted as edges come and go.
+ *
+ *  The <tt>DegreeIndex</tt> class keeps the vertices in one int array
+ *  sorted by degree, highest first, so that each degree is a contiguous
+ *  bucket. Vertices get a dense index from an IntIndexMap. A position
+ *  array says where each one sits, and above[d], the number of vertices
+ *  of degree greater than d, says where bucket d starts. Moving a vertex
+ *  up one degree swaps it with the first vertex of its bucket, and
+ *  moving it down swaps it with the last, so either is O(1). A new vertex
+ *  of degree 0 goes at the end. The k vertices of highest degree are read
+ *  from the front buckets without looking at the rest. Within a bucket
+ *  the vertices are in no order, so the buckets read are ranked by
+ *  vertex to match the tie-break of TopK.
+ *
+ */
+
+import java.util.Arrays;
+
+class DegreeIndex {
+   private final IntIndexMap index;   // vertex to dense index
+   private int[] vertex;              // dense index to vertex
+   private int[] degree;              // by dense index
+   private int[] position;            // where each dense index sits in order
+   private int[] order;               // dense indices, highest degree first
+   private int[] above;               // the number of vertices of degree greater than d
+   private int n;
+
+   /**
+    * Initializes an index with no vertices
+    */
+   DegreeIndex() {
+      index = new IntIndexMap();
+      vertex = new int[16];
+      degree = new int[16];
+      position = new int[16];
+      order = new int[16];
+      above = new int[16];
+   }
+
+   /**
+    * Adds a vertex with the given degree.
+    *
+    * @param v the vertex, which must not be in the index yet
+    * @param degree the current degree of v
+    */
+   void add(int v, int degree) {
+      if (n == order.length) {
+         vertex = Arrays.copyOf(vertex, 2 * n);
+         this.degree = Arrays.copyOf(this.degree, 2 * n);
+         position = Arrays.copyOf(position, 2 * n);
+         order = Arrays.copyOf(order, 2 * n);
+      }
+      // A vertex of degree 0 belongs at the end, then it climbs
+      int i = n++;
+      index.put(v, i);
+      vertex[i] = v;
+      position[i] = i;
+      order[i] = i;
+      for (int d = 0; d < degree; d++)
+         up(i);
+   }
+
+   /**
+    * Moves a vertex up or down by some number of edges.
+    *
+    * @param v a vertex in the index
+    * @param delta the change in its degree
+    */
+   void change(int v, int delta) {
+      int i = index.get(v);
+      for (; delta > 0; delta--)
+         up(i);
+      for (; delta < 0; delta++)
+         down(i);
+   }
+
+   /**
+    * Returns the k vertices of highest degree.
+    *
+    * @param  k the number of vertices wanted
+    * @return at most k vertices, highest degree first
+    */
+   int[] top(int k) {
+      int[] result = new int[Math.max(0, Math.min(k, n))];
+      int count = 0;
+      for (int p = 0; count < result.length; ) {
+         int d = degree[order[p]];
+         int end = d == 0 ? n : above[d - 1];
+         int need = result.length - count;
+         if (end - p <= need) {
+            // The whole bucket is taken, smallest vertex first
+            for (int q = p; q < end; q++)
+               result[count++] = vertex[order[q]];
+            Arrays.sort(result, count - (end - p), count);
+         }
+         else {
+            // Equal scores leave TopK the smallest vertices
+            TopK smallest = new TopK(need);
+            for (int q = p; q < end; q++)
+               smallest.offer(vertex[order[q]], 0);
+            int[] smallestFirst = smallest.drain();
+            System.arraycopy(smallestFirst, 0, result, count, need);
+            count += need;
+         }
+         p = end;
+      }
+      return result;
+   }
+
+   /*
+      Moves dense index i from its bucket to the one above.
+   */
+   private void up(int i) {
+      int d = degree[i];
+      if (d + 1 >= above.length)
+         above = Arrays.copyOf(above, 2 * (d + 1));
+      swap(i, order[above[d]]);
+      above[d]++;
+      degree[i] = d + 1;
+   }
+
+   /*
+      Moves dense index i from its bucket to the one below.
+   */
+   private void down(int i) {
+      int d = degree[i];
+      swap(i, order[above[d - 1] - 1]);
+      above[d - 1]--;
+      degree[i] = d - 1;
+   }
+
+   private void swap(int i, int j) {
+      int p = position[i];
+      int q = position[j];
+      order[p] = j;
+      order[q] = i;
+      position[i] = q;
+      position[j] = p;
+   }
+}
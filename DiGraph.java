@@ -1,7 +1,9 @@
 /******************************************************************************
  *
  *  A directed graph, implemented using a Map of sets.
- *  Self-loops allowed.  Based on the general Graph class provided by
+ *  Self-loops allowed.  Each set is an AdjacencySet: a sorted int array
+ *  for most vertices, and a compressed bitmap for vertices with more
+ *  than AdjacencySet.SMALL_LIMIT neighbors.  Based on the general Graph class provided by
  *  cs.princeton.edu under the GNU General Public License, version 3 (GPLv3)
  *  available at http://www.gnu.org/copyleft/gpl.html
  *
@@ -10,27 +12,49 @@
  *  It supports the following operations:
  *  - add a vertex to the graph,
  *  - add an edge to the graph,
- *  - obtain a set of all of the vertices adjacent to a vertex. 
+ *  - remove an edge from the graph,
+ *  - obtain a set of all of the vertices adjacent to a vertex,
+ *  - visit the vertices adjacent to a vertex without copying them,
+ *  - optionally, count and visit the vertices with an edge to a vertex,
+ *  - find the vertices with the most out-edges or in-edges. 
  *  It also provides methods for returning the number of vertices <em>V</em>,
  *  the number of edges <em>E</em>, and a String representation of the Graph.
  * 
  */
  
+import java.io.IOException;
 import java.util.*;
+import java.util.function.IntConsumer;
  
-public class DiGraph {
+public class DiGraph implements DirectedGraph {
    private static final String NEWLINE = System.getProperty("line.separator");
    private int V;
    private int E;
-   private Map<Integer, Set<Integer>> adj;
+   private long version;                        // bumped by every change
+   private Map<Integer, AdjacencySet> adj;
+   private Map<Integer, AdjacencySet> inAdj;   // null unless in-edges are tracked
+   private DegreeIndex outIndex;               // built by the first top-K query
+   private DegreeIndex inIndex;
    
    /**
     * Initializes an empty graph
     */
    public DiGraph() {
+      this(false);
+   }
+
+   /**
+    * Initializes an empty graph that may also index its in-edges
+    *
+    * @param trackInEdges true to keep, for every vertex, the set of
+    *        vertices with an edge to it
+    */
+   public DiGraph(boolean trackInEdges) {
       this.V = 0;
       this.E = 0;
       adj =  new TreeMap<>();
+      if (trackInEdges)
+         inAdj = new HashMap<>();
    }
 
     /**
@@ -51,6 +75,16 @@ public class DiGraph {
       return E;
    }
 
+   /**
+    * Returns a counter that moves on every vertex or edge added,
+    * and every edge removed.
+    *
+    * @return the modification counter of this graph
+    */
+   public long version() {
+      return version;
+   }
+
    /**
     * Ensures the argument is a valid vertex in the graph
     *
@@ -72,8 +106,15 @@ public class DiGraph {
       if (adj.containsKey(v))
          return false;
       V++;
-      Set<Integer> neighbors = new HashSet<>();
+      version++;
+      AdjacencySet neighbors = new AdjacencySet();
       adj.put(v, neighbors);
+      if (inAdj != null)
+         inAdj.put(v, new AdjacencySet());
+      if (outIndex != null)
+         outIndex.add(v, 0);
+      if (inIndex != null)
+         inIndex.add(v, 0);
       return true;
    }
 
@@ -91,10 +132,141 @@ public class DiGraph {
       if (adj.get(v).contains(w))
          return false;
       E++;
+      version++;
       adj.get(v).add(w);
+      if (inAdj != null)
+         inAdj.get(w).add(v);
+      indexEdge(v, w);
       return true;
    }
 
+   /**
+    * Adds the directed edges src[i]-dst[i] for i below count.
+    * Vertices that are not in the graph yet are added as well.
+    * The batch is sorted by tail and deduplicated first, so each
+    * tail is looked up once however many edges it has, and its heads
+    * are merged into its neighbors in one pass. The new edges are then
+    * sorted by head to do the same for the in-edges.
+    *
+    * @param  src the tails of the edges
+    * @param  dst the heads of the edges
+    * @param  count the number of edges to take from the arrays
+    * @return the number of edges that were not in the graph before
+    * @throws IllegalArgumentException if either array is shorter than count
+    */
+   public int addEdges(int[] src, int[] dst, int count) {
+      if (count < 0 || src.length < count || dst.length < count)
+         throw new IllegalArgumentException("Invalid edge count " + count);
+      long[] keys = new long[count];
+      for (int i = 0; i < count; i++)
+         keys[i] = GraphBuilder.key(src[i], dst[i]);
+      int n = GraphBuilder.sortUnique(keys, count);
+
+      int[] run = new int[n];
+      int added = 0;
+      for (int k = 0, end; k < n; k = end) {
+         int v = GraphBuilder.tail(keys[k]);
+         addVertex(v);
+         for (end = k; end < n && GraphBuilder.tail(keys[end]) == v; end++) {
+            run[end] = GraphBuilder.head(keys[end]);
+            addVertex(run[end]);
+         }
+         int fresh = adj.get(v).addAllSorted(run, k, end);
+         if (outIndex != null)
+            outIndex.change(v, fresh);
+         // The run has been read, so its slots can hold the new edges reversed
+         for (int i = k; i < k + fresh; i++)
+            keys[added++] = GraphBuilder.key(run[i], v);
+      }
+
+      if (inAdj != null || inIndex != null) {
+         GraphBuilder.sortUnique(keys, added);
+         for (int k = 0, end; k < added; k = end) {
+            int w = GraphBuilder.tail(keys[k]);
+            for (end = k; end < added && GraphBuilder.tail(keys[end]) == w; end++)
+               run[end] = GraphBuilder.head(keys[end]);
+            if (inAdj != null)
+               inAdj.get(w).addAllSorted(run, k, end);
+            if (inIndex != null)
+               inIndex.change(w, end - k);
+         }
+      }
+      E += added;
+      version += added;
+      return added;
+   }
+
+   /**
+    * Removes the directed edge v-w from this graph. Both vertices
+    * stay in the graph.
+    *
+    * @param  v the tail of the edge
+    * @param  w the head of the edge
+    * @return true if the edge was removed, false if it was not there
+    * @throws IllegalArgumentException if either vertex does not exist
+    */
+   public boolean removeEdge(int v, int w) {
+      validateVertex(v);
+      validateVertex(w);
+      if (!adj.get(v).remove(w))
+         return false;
+      E--;
+      version++;
+      if (inAdj != null)
+         inAdj.get(w).remove(v);
+      if (outIndex != null)
+         outIndex.change(v, -1);
+      if (inIndex != null)
+         inIndex.change(w, -1);
+      return true;
+   }
+
+   /*
+      Moves both ends of a new edge v-w up one bucket in the degree
+      indexes, if they have been built.
+   */
+   private void indexEdge(int v, int w) {
+      if (outIndex != null)
+         outIndex.change(v, 1);
+      if (inIndex != null)
+         inIndex.change(w, 1);
+   }
+
+   /**
+    * Checks whether v is a vertex of this graph.
+    *
+    * @param  v the vertex
+    * @return true if v is in the graph, false otherwise
+    */
+   public boolean hasVertex(int v) {
+      return adj.containsKey(v);
+   }
+
+   /**
+    * Checks whether the directed edge v-w is in this graph.
+    *
+    * @param  v the tail of the edge
+    * @param  w the head of the edge
+    * @return true if the edge is in the graph, false otherwise
+    * @throws IllegalArgumentException if v is not a valid vertex
+    */
+   public boolean hasEdge(int v, int w) {
+      validateVertex(v);
+      return adj.get(v).contains(w);
+   }
+
+   /**
+    * Returns the number of edges leaving vertex <tt>v</tt>.
+    *
+    * @param  v the vertex
+    * @return the out-degree of v
+    * @throws IllegalArgumentException if v is not a valid vertex
+    */
+   public int outDegree(int v) {
+      validateVertex(v);
+      return adj.get(v).size();
+   }
+
    /**
     * Returns the vertices adjacent to vertex <tt>v</tt>.
     *
@@ -104,7 +276,142 @@ public class DiGraph {
     */
    public Set<Integer> getAdjacent(int v) {
       validateVertex(v);
-      return new HashSet<Integer>(adj.get(v));
+      return adj.get(v).toSet();
+   }
+
+   /**
+    * Passes every vertex of this graph to the given action,
+    * in increasing order.
+    *
+    * @param action the visitor to call once per vertex
+    */
+   public void forEachVertex(IntConsumer action) {
+      for (int v : adj.keySet())
+         action.accept(v);
+   }
+
+   /**
+    * Passes every vertex adjacent to <tt>v</tt> to the given action.
+    * Unlike getAdjacent, the neighbor set is not copied.
+    *
+    * @param  v the vertex
+    * @param  action the visitor to call once per neighbor
+    * @throws IllegalArgumentException if v is not a valid vertex
+    */
+   public void forEachNeighbor(int v, IntConsumer action) {
+      validateVertex(v);
+      adj.get(v).forEach(action);
+   }
+
+   /**
+    * Returns a cursor over the neighbors of the vertices of this graph.
+    *
+    * @return a new cursor, not yet positioned on any vertex
+    */
+   public NeighborCursor cursor() {
+      return new SetCursor(adj);
+   }
+
+   /**
+    * Checks whether this graph keeps an index of its in-edges.
+    *
+    * @return true if the graph was created to track in-edges
+    */
+   public boolean tracksInEdges() {
+      return inAdj != null;
+   }
+
+   /**
+    * Returns the number of edges entering vertex <tt>v</tt>.
+    *
+    * @param  v the vertex
+    * @return the in-degree of v
+    * @throws IllegalArgumentException if v is not a valid vertex
+    * @throws UnsupportedOperationException if in-edges are not tracked
+    */
+   public int inDegree(int v) {
+      return inNeighbors(v).size();
+   }
+
+   /**
+    * Passes every vertex with an edge to <tt>v</tt> to the given action.
+    *
+    * @param  v the vertex
+    * @param  action the visitor to call once per in-neighbor
+    * @throws IllegalArgumentException if v is not a valid vertex
+    * @throws UnsupportedOperationException if in-edges are not tracked
+    */
+   public void forEachInNeighbor(int v, IntConsumer action) {
+      inNeighbors(v).forEach(action);
+   }
+
+   /**
+    * Returns a cursor over the in-neighbors of the vertices of this graph.
+    *
+    * @return a new cursor, not yet positioned on any vertex
+    * @throws UnsupportedOperationException if in-edges are not tracked
+    */
+   public NeighborCursor inCursor() {
+      if (inAdj == null)
+         throw new UnsupportedOperationException("In-edges are not tracked");
+      return new SetCursor(inAdj);
+   }
+
+   /*
+      Returns the in-neighbor set of v, checking that it is available.
+   */
+   private AdjacencySet inNeighbors(int v) {
+      if (inAdj == null)
+         throw new UnsupportedOperationException("In-edges are not tracked");
+      validateVertex(v);
+      return inAdj.get(v);
+   }
+
+   /*
+      Walks the neighbor set of one vertex at a time. The sets are
+      read in place, so the graph must not change while a cursor is used.
+   */
+   private class SetCursor implements NeighborCursor {
+      private final Map<Integer, AdjacencySet> sets;
+      private final AdjacencySet.Walker walker = new AdjacencySet.Walker();
+
+      SetCursor(Map<Integer, AdjacencySet> sets) {
+         this.sets = sets;
+      }
+
+      public void moveTo(int v) {
+         validateVertex(v);
+         walker.reset(sets.get(v));
+      }
+
+      public boolean hasNext() {
+         return walker.hasNext();
+      }
+
+      public int next() {
+         return walker.next();
+      }
+   }
+
+   /**
+    * Returns an immutable, compressed sparse row copy of this graph.
+    * Later changes to this graph are not reflected in the copy.
+    *
+    * @return a read-only snapshot of this graph
+    */
+   public CompactDiGraph freeze() {
+      return CompactDiGraph.copyOf(this);
+   }
+
+   /**
+    * Saves this graph to a binary GraphFile, which
+    * CompactDiGraph.open can map back into memory.
+    *
+    * @param  filename the name of the file to create or replace
+    * @throws IOException if the file cannot be written
+    */
+   public void save(String filename) throws IOException {
+      GraphFile.write(filename, this, null);
    }
 
    /**
@@ -118,22 +425,70 @@ public class DiGraph {
       s.append(V + " vertices, " + E + " edges " + NEWLINE);
       for (int v: adj.keySet()) {
          s.append(v + ": ");
-         for (int w : adj.get(v)) {
-            s.append(w + " ");
-         }
+         adj.get(v).forEach(w -> s.append(w + " "));
          s.append(NEWLINE);
       }
       return s.toString();
    }
    
-   public int mostPopular(){
-   int max = 0;
-      for(int i = 1; i<= 3;i++){
-         if(getAdjacent(i).size() > max){
-            max = getAdjacent(i).size();
+   /**
+    * Returns the k vertices with the most out-edges, ties going to the
+    * smaller vertex. The first call sorts the degrees of all vertices;
+    * after that they are kept sorted as edges are added and removed.
+    *
+    * @param  k the number of vertices wanted
+    * @return at most k vertices, highest out-degree first
+    */
+   public int[] topKByOutDegree(int k) {
+      if (outIndex == null) {
+         outIndex = new DegreeIndex();
+         for (Map.Entry<Integer, AdjacencySet> entry : adj.entrySet())
+            outIndex.add(entry.getKey(), entry.getValue().size());
       }
+      return outIndex.top(k);
+   }
+
+   /**
+    * Returns the k vertices with the most in-edges, ties going to the
+    * smaller vertex. The first call takes the in-degrees from the
+    * tracked in-edges, or counts them in an array indexed by position
+    * when in-edges are not tracked; after that the counts are kept
+    * sorted as edges are added and removed.
+    *
+    * @param  k the number of vertices wanted
+    * @return at most k vertices, highest in-degree first
+    */
+   public int[] topKByInDegree(int k) {
+      if (inIndex == null) {
+         DegreeIndex index = new DegreeIndex();
+         if (inAdj != null) {
+            for (int v : adj.keySet())
+               index.add(v, inAdj.get(v).size());
+         }
+         else {
+            IntIndexMap ids = new IntIndexMap();
+            for (int v : adj.keySet())
+               ids.put(v, ids.size());
+            int[] counts = new int[ids.size()];
+            for (AdjacencySet neighbors : adj.values())
+               neighbors.forEach(w -> counts[ids.get(w)]++);
+            for (int v : adj.keySet())
+               index.add(v, counts[ids.get(v)]);
+         }
+         inIndex = index;
       }
-      return max;
+      return inIndex.top(k);
+   }
+
+   /**
+    * Returns the largest number of edges leaving any one vertex.
+    *
+    * @return the highest out-degree in the graph, or 0 if it is empty
+    */
+   public int mostPopular(){
+      if (V == 0)
+         return 0;
+      return outDegree(topKByOutDegree(1)[0]);
    }
    
 /*
@@ -148,6 +503,7 @@ public class DiGraph {
       g.addEdge(25, 50);
       g.addEdge(25, 10);
       System.out.println(g); 
+      System.out.println(g.freeze());
       System.out.println(g.mostPopular());
    }
 }
\ No newline at end of file
@@ -0,0 +1,182 @@
+/******************************************************************************
+ *
+ *  The read-only operations shared by every directed graph in this project.
+ *
+ *  The <tt>DirectedGraph</tt> interface describes a directed graph of
+ *  vertices, represented as integer values. Besides the number of vertices
+ *  and edges it offers three ways of looking at the neighbors of a vertex:
+ *  - getAdjacent returns a copy of them as a Set,
+ *  - forEachNeighbor passes each of them to a visitor,
+ *  - a NeighborCursor walks over them one int at a time.
+ *  Only getAdjacent allocates memory in proportion to the degree of the
+ *  vertex, so degree scans and traversals should use the other two.
+ *  A graph may also index its in-edges, in which case the same questions
+ *  can be asked against the direction of the edges. Graphs that do not
+ *  keep that index throw UnsupportedOperationException for them.
+ *
+ */
+
+import java.util.Set;
+import java.util.function.IntConsumer;
+
+public interface DirectedGraph {
+
+   /**
+    * Returns the number of vertices in this graph.
+    *
+    * @return the number of vertices in this graph
+    */
+   int vertices();
+
+   /**
+    * Returns the number of edges in this graph.
+    *
+    * @return the number of edges in this graph
+    */
+   int edges();
+
+   /**
+    * Checks whether v is a vertex of this graph.
+    *
+    * @param  v the vertex
+    * @return true if v is in the graph, false otherwise
+    */
+   boolean hasVertex(int v);
+
+   /**
+    * Checks whether the directed edge v-w is in this graph.
+    *
+    * @param  v the tail of the edge
+    * @param  w the head of the edge
+    * @return true if the edge is in the graph, false otherwise
+    * @throws IllegalArgumentException if v is not a valid vertex
+    */
+   boolean hasEdge(int v, int w);
+
+   /**
+    * Returns the number of edges leaving vertex <tt>v</tt>.
+    *
+    * @param  v the vertex
+    * @return the out-degree of v
+    * @throws IllegalArgumentException if v is not a valid vertex
+    */
+   int outDegree(int v);
+
+   /**
+    * Returns the vertices adjacent to vertex <tt>v</tt>.
+    *
+    * @param  v the vertex
+    * @return a set containing the vertices adjacent to vertex <tt>v</tt>
+    * @throws IllegalArgumentException if v is not a valid vertex
+    */
+   Set<Integer> getAdjacent(int v);
+
+   /**
+    * Passes every vertex of this graph to the given action.
+    *
+    * @param action the visitor to call once per vertex
+    */
+   void forEachVertex(IntConsumer action);
+
+   /**
+    * Passes every vertex adjacent to <tt>v</tt> to the given action.
+    *
+    * @param  v the vertex
+    * @param  action the visitor to call once per neighbor
+    * @throws IllegalArgumentException if v is not a valid vertex
+    */
+   void forEachNeighbor(int v, IntConsumer action);
+
+   /**
+    * Returns a cursor over the neighbors of the vertices of this graph.
+    * The same cursor can be moved from vertex to vertex, so one cursor
+    * is enough for a whole traversal.
+    *
+    * @return a new cursor, not yet positioned on any vertex
+    */
+   NeighborCursor cursor();
+
+   /**
+    * Returns a counter that changes whenever a vertex or an edge is
+    * added to or removed from this graph. A result computed from the
+    * graph is still current as long as the counter has not moved.
+    * Graphs that cannot change always return 0.
+    *
+    * @return the modification counter of this graph
+    */
+   default long version() {
+      return 0;
+   }
+
+   /**
+    * Checks whether this graph keeps an index of its in-edges.
+    *
+    * @return true if the in-edge queries are supported, false otherwise
+    */
+   default boolean tracksInEdges() {
+      return false;
+   }
+
+   /**
+    * Returns the number of edges entering vertex <tt>v</tt>.
+    *
+    * @param  v the vertex
+    * @return the in-degree of v
+    * @throws IllegalArgumentException if v is not a valid vertex
+    * @throws UnsupportedOperationException if in-edges are not indexed
+    */
+   default int inDegree(int v) {
+      throw new UnsupportedOperationException("In-edges are not indexed");
+   }
+
+   /**
+    * Passes every vertex with an edge to <tt>v</tt> to the given action.
+    *
+    * @param  v the vertex
+    * @param  action the visitor to call once per in-neighbor
+    * @throws IllegalArgumentException if v is not a valid vertex
+    * @throws UnsupportedOperationException if in-edges are not indexed
+    */
+   default void forEachInNeighbor(int v, IntConsumer action) {
+      throw new UnsupportedOperationException("In-edges are not indexed");
+   }
+
+   /**
+    * Returns a cursor over the in-neighbors of the vertices of this graph.
+    *
+    * @return a new cursor, not yet positioned on any vertex
+    * @throws UnsupportedOperationException if in-edges are not indexed
+    */
+   default NeighborCursor inCursor() {
+      throw new UnsupportedOperationException("In-edges are not indexed");
+   }
+
+   /**
+    * Returns the k vertices with the most out-edges, ties going to the
+    * smaller vertex. Unless a graph keeps its degrees sorted this scans
+    * every vertex.
+    *
+    * @param  k the number of vertices wanted
+    * @return at most k vertices, highest out-degree first
+    */
+   default int[] topKByOutDegree(int k) {
+      TopK top = new TopK(k);
+      forEachVertex(v -> top.offer(v, outDegree(v)));
+      return top.drain();
+   }
+
+   /**
+    * Returns the k vertices with the most in-edges, ties going to the
+    * smaller vertex. Unless a graph keeps its degrees sorted this scans
+    * every vertex.
+    *
+    * @param  k the number of vertices wanted
+    * @return at most k vertices, highest in-degree first
+    * @throws UnsupportedOperationException if in-edges are not indexed
+    */
+   default int[] topKByInDegree(int k) {
+      TopK top = new TopK(k);
+      forEachVertex(v -> top.offer(v, inDegree(v)));
+      return top.drain();
+   }
+}
@@ -0,0 +1,176 @@
+/******************************************************************************
+ *
+ *  Whole-graph breadth-first search that switches direction per level.
+ *
+ *  The <tt>DirectionOptimizingBfs</tt> class follows Beamer, Asanovic and
+ *  Patterson. While the frontier is small, a level is expanded top-down:
+ *  every frontier vertex offers itself to its out-neighbors. Once the
+ *  frontier has more out-edges than about 1/ALPHA of the edges still
+ *  leaving unvisited vertices, it switches to bottom-up: every unvisited
+ *  vertex scans its in-edges and stops at the first parent it finds in
+ *  the frontier. On a power-law graph the middle levels cover most of
+ *  the graph, and there bottom-up skips most edge checks. When the
+ *  frontier shrinks below V/BETA vertices the search goes top-down again.
+ *  The frontiers and the visited set are dense bitsets of V bits, and
+ *  vertices are the dense indices of a CompactDiGraph. One instance
+ *  reuses its arrays for every search and is not thread-safe.
+ *
+ */
+
+import java.util.Arrays;
+
+public class DirectionOptimizingBfs {
+   private static final int ALPHA = 14;
+   private static final int BETA = 24;
+   private final CompactDiGraph g;
+   private final int V;
+   private long[] frontier;
+   private long[] next;
+   private final long[] visited;
+   private final int[] dist;      // -1 for vertices not reached
+   private int reached;
+   private int depth;
+   private long edgesExamined;
+
+   /**
+    * Initializes a search over the given graph.
+    *
+    * @param g the graph to search
+    */
+   public DirectionOptimizingBfs(CompactDiGraph g) {
+      this.g = g;
+      V = g.vertices();
+      int words = (V + 63) >>> 6;
+      frontier = new long[words];
+      next = new long[words];
+      visited = new long[words];
+      dist = new int[V];
+   }
+
+   /**
+    * Searches from a source. The distances are kept in an array that
+    * the next search overwrites.
+    *
+    * @param  source the dense index of the source
+    * @return the distance to each index, -1 where it cannot be reached
+    * @throws IllegalArgumentException if source is not a valid index
+    */
+   public int[] search(int source) {
+      if (source < 0 || source >= V)
+         throw new IllegalArgumentException("Invalid Vertex " + source);
+      Arrays.fill(dist, -1);
+      Arrays.fill(visited, 0);
+      Arrays.fill(frontier, 0);
+      edgesExamined = 0;
+      depth = 0;
+
+      set(frontier, source);
+      set(visited, source);
+      dist[source] = 0;
+      reached = 1;
+      int frontierSize = 1;
+      long frontierEdges = g.degreeAt(source);
+      long unvisitedEdges = g.edges() - frontierEdges;
+      boolean bottomUp = false;
+      while (frontierSize > 0) {
+         if (!bottomUp && frontierEdges > unvisitedEdges / ALPHA)
+            bottomUp = true;
+         else if (bottomUp && frontierSize < V / BETA)
+            bottomUp = false;
+
+         Arrays.fill(next, 0);
+         frontierSize = 0;
+         frontierEdges = 0;
+         int d = depth + 1;
+         if (bottomUp) {
+            // Every unvisited vertex looks for a parent in the frontier
+            for (int i = 0; i < visited.length; i++) {
+               long word = ~visited[i];
+               if (i == visited.length - 1 && (V & 63) != 0)
+                  word &= (1L << (V & 63)) - 1;
+               for (; word != 0; word &= word - 1) {
+                  int v = (i << 6) | Long.numberOfTrailingZeros(word);
+                  for (int k = g.firstInEdge(v), end = g.firstInEdge(v + 1); k < end; k++) {
+                     edgesExamined++;
+                     if (test(frontier, g.source(k))) {
+                        dist[v] = d;
+                        set(next, v);
+                        frontierSize++;
+                        frontierEdges += g.degreeAt(v);
+                        break;
+                     }
+                  }
+               }
+            }
+            for (int i = 0; i < visited.length; i++)
+               visited[i] |= next[i];
+         }
+         else {
+            // Every frontier vertex offers itself to its out-neighbors
+            for (int i = 0; i < frontier.length; i++) {
+               for (long word = frontier[i]; word != 0; word &= word - 1) {
+                  int v = (i << 6) | Long.numberOfTrailingZeros(word);
+                  for (int k = g.firstEdge(v), end = g.firstEdge(v + 1); k < end; k++) {
+                     edgesExamined++;
+                     int w = g.target(k);
+                     if (!test(visited, w)) {
+                        set(visited, w);
+                        set(next, w);
+                        dist[w] = d;
+                        frontierSize++;
+                        frontierEdges += g.degreeAt(w);
+                     }
+                  }
+               }
+            }
+         }
+         if (frontierSize > 0) {
+            depth = d;
+            reached += frontierSize;
+            unvisitedEdges -= frontierEdges;
+         }
+         long[] swap = frontier;
+         frontier = next;
+         next = swap;
+      }
+      return dist;
+   }
+
+   /**
+    * Returns the number of vertices the last search reached.
+    *
+    * @return the number of reached vertices, the source included
+    */
+   public int reached() {
+      return reached;
+   }
+
+   /**
+    * Returns the greatest distance found by the last search, which is
+    * the eccentricity of its source within the part of the graph it
+    * can reach.
+    *
+    * @return the number of levels below the source
+    */
+   public int depth() {
+      return depth;
+   }
+
+   /**
+    * Returns the number of edges the last search looked at, in either
+    * direction.
+    *
+    * @return the number of edges examined
+    */
+   public long edgesExamined() {
+      return edgesExamined;
+   }
+
+   private static boolean test(long[] bits, int v) {
+      return (bits[v >>> 6] & (1L << v)) != 0;
+   }
+
+   private static void set(long[] bits, int v) {
+      bits[v >>> 6] |= 1L << v;
+   }
+}
@@ -0,0 +1,401 @@
+/******************************************************************************
+ *
+ *  Reads a file of "follower followed" name pairs in parallel.
+ *
+ *  The <tt>EdgeFileLoader</tt> class maps the file into memory and cuts
+ *  it into pieces of about CHUNK_BYTES that end on a newline, so every
+ *  pair lies inside one piece. The pieces are parsed straight from the
+ *  mapped bytes on the common fork/join pool. Each worker gives the
+ *  names of its own piece local ids through a small hash table over the
+ *  bytes, and turns only the distinct names into Strings. The calling
+ *  thread then takes the pieces in file order, interns each distinct
+ *  name once into the UserDictionary, renumbers the edges and hands them
+ *  to the sink as one batch. A name therefore gets the same id it would
+ *  get from reading the file front to back, and the graph is only ever
+ *  touched by one thread. At most a few pieces per worker are parsed
+ *  ahead of the one being merged, which bounds the memory in use.
+ *
+ *  The number of bytes parsed and edges delivered can be read from any
+ *  thread while a load is running, along with the rate so far.
+ *
+ */
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class EdgeFileLoader {
+   static final int CHUNK_BYTES = 1 << 25;
+   private final UserDictionary users;
+   private final AtomicLong bytesParsed = new AtomicLong();
+   private volatile long edgesRead;
+   private volatile long started;
+   private volatile long finished;
+
+   /**
+    * Receives the edges of a file, one batch per piece.
+    */
+   public interface Sink {
+      /**
+       * Takes the edges src[i]-dst[i] for i below count.
+       *
+       * @param src the tails of the edges
+       * @param dst the heads of the edges
+       * @param count the number of edges in the batch
+       */
+      void addEdges(int[] src, int[] dst, int count);
+   }
+
+   /**
+    * Initializes a loader that gives names their ids from a dictionary.
+    *
+    * @param users the dictionary that new names are added to
+    */
+   public EdgeFileLoader(UserDictionary users) {
+      this.users = users;
+   }
+
+   /**
+    * Reads a file with one name pair per line and passes an edge A-B to
+    * the sink for every line "A B", which says that A follows B. Names
+    * are separated by spaces or tabs and may be any UTF-8 text without
+    * whitespace.
+    *
+    * @param  filename the name of the file
+    * @param  sink where the edges are sent, always on the calling thread
+    * @return the number of edges read, duplicates included
+    * @throws IOException if the file cannot be read, or a line has only one name
+    */
+   public long load(String filename, Sink sink) throws IOException {
+      bytesParsed.set(0);
+      edgesRead = 0;
+      finished = 0;
+      started = System.nanoTime();
+      try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+         long[] bounds = split(channel);
+         int window = 2 * ForkJoinPool.getCommonPoolParallelism() + 1;
+         ArrayDeque<Future<Chunk>> pending = new ArrayDeque<>();
+         int next = 0;
+         try {
+            while (next < bounds.length - 1 || !pending.isEmpty()) {
+               while (next < bounds.length - 1 && pending.size() < window) {
+                  long from = bounds[next];
+                  long to = bounds[++next];
+                  pending.add(ForkJoinPool.commonPool().submit(() -> parse(channel, from, to)));
+               }
+               merge(await(pending.poll()), sink);
+            }
+         }
+         finally {
+            for (Future<Chunk> task : pending)
+               task.cancel(true);
+         }
+      }
+      finished = System.nanoTime();
+      return edgesRead;
+   }
+
+   /**
+    * Returns the number of bytes parsed so far by the current or last load.
+    *
+    * @return the number of bytes parsed
+    */
+   public long bytesParsed() {
+      return bytesParsed.get();
+   }
+
+   /**
+    * Returns the number of edges passed to the sink so far by the
+    * current or last load.
+    *
+    * @return the number of edges read
+    */
+   public long edgesRead() {
+      return edgesRead;
+   }
+
+   /**
+    * Returns the time spent by the current or last load.
+    *
+    * @return the elapsed time in seconds
+    */
+   public double seconds() {
+      if (started == 0)
+         return 0;
+      long end = finished != 0 ? finished : System.nanoTime();
+      return (end - started) / 1e9;
+   }
+
+   /**
+    * Returns the rate at which the file has been parsed.
+    *
+    * @return megabytes parsed per second
+    */
+   public double megabytesPerSecond() {
+      double seconds = seconds();
+      return seconds > 0 ? bytesParsed() / 1e6 / seconds : 0;
+   }
+
+   /**
+    * Returns the rate at which edges have reached the sink.
+    *
+    * @return edges read per second
+    */
+   public double edgesPerSecond() {
+      double seconds = seconds();
+      return seconds > 0 ? edgesRead() / seconds : 0;
+   }
+
+   /**
+    * Returns a one-line report of the progress and speed of the load.
+    *
+    * @return the report
+    */
+   public String toString() {
+      return String.format("%d edges, %.1f MB in %.3f s (%.1f MB/s, %.0f edges/s)",
+         edgesRead(), bytesParsed() / 1e6, seconds(), megabytesPerSecond(), edgesPerSecond());
+   }
+
+   /*
+      Cuts the file into pieces of about CHUNK_BYTES, each one ending
+      just after a newline or at the end of the file.
+   */
+   private static long[] split(FileChannel channel) throws IOException {
+      long size = channel.size();
+      long[] bounds = new long[(int) (size / CHUNK_BYTES) + 2];
+      int n = 1;
+      ByteBuffer buffer = ByteBuffer.allocate(1 << 12);
+      for (long from = CHUNK_BYTES; from < size; ) {
+         long end = lineEnd(channel, from, buffer);
+         if (end >= size)
+            break;
+         bounds[n++] = end;
+         from = end + CHUNK_BYTES;
+      }
+      bounds[n++] = size;
+      return Arrays.copyOf(bounds, n);
+   }
+
+   /*
+      Returns the position just after the first newline at or after
+      from, or the size of the file if there is none.
+   */
+   private static long lineEnd(FileChannel channel, long from, ByteBuffer buffer) throws IOException {
+      long position = from;
+      while (true) {
+         buffer.clear();
+         int read = channel.read(buffer, position);
+         if (read < 0)
+            return channel.size();
+         for (int k = 0; k < read; k++) {
+            if (buffer.get(k) == '\n')
+               return position + k + 1;
+         }
+         position += read;
+      }
+   }
+
+   /*
+      Parses the bytes between from and to on a worker thread.
+   */
+   private Chunk parse(FileChannel channel, long from, long to) throws IOException {
+      if (to - from > Integer.MAX_VALUE)
+         throw new IOException("Line too long near byte " + from);
+      // One bulk copy out of the mapping lets the loops below run over an array
+      MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, from, to - from);
+      byte[] bytes = new byte[mapped.limit()];
+      mapped.get(bytes);
+      int n = bytes.length;
+      Chunk chunk = new Chunk(bytes);
+      int user = -1;
+      int k = 0;
+      while (true) {
+         while (k < n && isSpace(bytes[k]))
+            k++;
+         if (k == n)
+            break;
+         int start = k;
+         int hash = 0;
+         for (byte b; k < n && !isSpace(b = bytes[k]); k++)
+            hash = 31 * hash + b;
+         int id = chunk.intern(start, k, hash);
+         // Names alternate between a follower and the user they follow
+         if (user < 0)
+            user = id;
+         else {
+            chunk.addEdge(user, id);
+            user = -1;
+         }
+      }
+      if (user >= 0)
+         throw new IOException("Follower without a followed user near byte " + (from + k));
+      chunk.finish();
+      bytesParsed.addAndGet(n);
+      return chunk;
+   }
+
+   /*
+      Gives the distinct names of a parsed piece their global ids and
+      sends its edges on. Runs on the loading thread, in file order.
+   */
+   private void merge(Chunk chunk, Sink sink) {
+      int[] global = new int[chunk.nameCount];
+      for (int j = 0; j < chunk.nameCount; j++)
+         global[j] = users.intern(chunk.names[j]);
+      for (int i = 0; i < chunk.edgeCount; i++) {
+         chunk.src[i] = global[chunk.src[i]];
+         chunk.dst[i] = global[chunk.dst[i]];
+      }
+      sink.addEdges(chunk.src, chunk.dst, chunk.edgeCount);
+      edgesRead += chunk.edgeCount;
+   }
+
+   /*
+      Waits for a piece, rethrowing whatever stopped its worker.
+   */
+   private static Chunk await(Future<Chunk> task) throws IOException {
+      try {
+         return task.get();
+      }
+      catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw new InterruptedIOException("Interrupted while loading");
+      }
+      catch (ExecutionException e) {
+         // The pool wraps checked exceptions on their way out
+         for (Throwable t = e.getCause(); t != null; t = t.getCause()) {
+            if (t instanceof IOException)
+               throw (IOException) t;
+         }
+         Throwable cause = e.getCause();
+         if (cause instanceof RuntimeException)
+            throw (RuntimeException) cause;
+         if (cause instanceof Error)
+            throw (Error) cause;
+         throw new IOException(cause);
+      }
+   }
+
+   /*
+      Spaces, tabs, line breaks and the other ASCII control characters
+      separate names; bytes of multi-byte UTF-8 characters never do.
+   */
+   private static boolean isSpace(byte b) {
+      return b >= 0 && b <= ' ';
+   }
+
+   /*
+      The names and edges of one piece. Names are numbered locally, in
+      the order they first appear, and are kept as positions in the
+      bytes until finish() decodes the distinct ones.
+   */
+   private static class Chunk {
+      private byte[] bytes;
+      private int nameCount;
+      private int[] starts = new int[64];
+      private int[] ends = new int[64];
+      private int[] hashes = new int[64];
+      private int[] table = new int[128];   // local ids by hash, -1 marks an empty slot
+      private String[] names;
+      private int edgeCount;
+      private int[] src;
+      private int[] dst;
+
+      Chunk(byte[] bytes) {
+         this.bytes = bytes;
+         Arrays.fill(table, -1);
+         // Most lines hold two short names
+         src = new int[Math.max(16, bytes.length / 16)];
+         dst = new int[src.length];
+      }
+
+      int intern(int start, int end, int hash) {
+         int mask = table.length - 1;
+         int slot = IntIndexMap.hash(hash) & mask;
+         for (; table[slot] >= 0; slot = (slot + 1) & mask) {
+            int id = table[slot];
+            if (hashes[id] == hash && matches(id, start, end))
+               return id;
+         }
+         if (nameCount == starts.length) {
+            starts = Arrays.copyOf(starts, 2 * nameCount);
+            ends = Arrays.copyOf(ends, 2 * nameCount);
+            hashes = Arrays.copyOf(hashes, 2 * nameCount);
+         }
+         int id = nameCount++;
+         starts[id] = start;
+         ends[id] = end;
+         hashes[id] = hash;
+         table[slot] = id;
+         if (2 * nameCount > table.length)
+            rehash();
+         return id;
+      }
+
+      void addEdge(int v, int w) {
+         if (edgeCount == src.length) {
+            src = Arrays.copyOf(src, 2 * edgeCount);
+            dst = Arrays.copyOf(dst, 2 * edgeCount);
+         }
+         src[edgeCount] = v;
+         dst[edgeCount] = w;
+         edgeCount++;
+      }
+
+      /*
+         Decodes the distinct names and lets go of the bytes.
+      */
+      void finish() {
+         names = new String[nameCount];
+         for (int id = 0; id < nameCount; id++)
+            names[id] = new String(bytes, starts[id], ends[id] - starts[id], StandardCharsets.UTF_8);
+         bytes = null;
+         starts = ends = hashes = table = null;
+      }
+
+      private boolean matches(int id, int start, int end) {
+         int from = starts[id];
+         if (ends[id] - from != end - start)
+            return false;
+         return Arrays.equals(bytes, from, ends[id], bytes, start, end);
+      }
+
+      private void rehash() {
+         table = new int[2 * table.length];
+         Arrays.fill(table, -1);
+         int mask = table.length - 1;
+         for (int id = 0; id < nameCount; id++) {
+            int slot = IntIndexMap.hash(hashes[id]) & mask;
+            while (table[slot] >= 0)
+               slot = (slot + 1) & mask;
+            table[slot] = id;
+         }
+      }
+   }
+
+   /**
+    * Loads the file named on the command line into a graph and
+    * prints how long it took.
+    */
+   public static void main(String[] args) throws IOException
+   {
+      UserDictionary users = new UserDictionary();
+      GraphBuilder builder = new GraphBuilder();
+      EdgeFileLoader loader = new EdgeFileLoader(users);
+      loader.load(args[0], builder::addEdges);
+      CompactDiGraph g = builder.build();
+      System.out.println(loader);
+      System.out.println(users.size() + " users, " + g.edges() + " distinct edges");
+   }
+}
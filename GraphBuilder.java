@@ -0,0 +1,179 @@
+/******************************************************************************
+ *
+ *  Builds a CompactDiGraph from batches of edges.
+ *
+ *  The <tt>GraphBuilder</tt> class is the fast way to load a large graph.
+ *  Edges are not checked one by one as they arrive. Each edge v-w is
+ *  packed into one long, with v in the high half, and appended to a
+ *  buffer. Whenever the buffer fills up it is sorted, with
+ *  Arrays.parallelSort on large buffers, and duplicates are removed in a
+ *  single sweep. build() does this one last time and lays the sorted
+ *  edges out as CSR rows in one pass; every vertex that appears in an
+ *  edge is created on the way.
+ *
+ */
+
+import java.util.Arrays;
+
+public class GraphBuilder {
+   private long[] keys;
+   private int size;
+   private int[] extraVertices;   // vertices added on their own
+   private int vertexCount;
+
+   /**
+    * Initializes a builder with no vertices and no edges
+    */
+   public GraphBuilder() {
+      keys = new long[1024];
+      extraVertices = new int[16];
+   }
+
+   /**
+    * Adds the vertex v, which need not have any edges.
+    *
+    * @param  v the vertex
+    * @return this builder
+    */
+   public GraphBuilder addVertex(int v) {
+      if (vertexCount == extraVertices.length)
+         extraVertices = Arrays.copyOf(extraVertices, 2 * vertexCount);
+      extraVertices[vertexCount++] = v;
+      return this;
+   }
+
+   /**
+    * Adds the directed edge v-w, and both of its vertices.
+    *
+    * @param  v one vertex in the edge
+    * @param  w the other vertex in the edge
+    * @return this builder
+    */
+   public GraphBuilder addEdge(int v, int w) {
+      if (size == keys.length)
+         compact();
+      keys[size++] = key(v, w);
+      return this;
+   }
+
+   /**
+    * Adds the directed edges src[i]-dst[i] for i below count,
+    * and all of their vertices.
+    *
+    * @param  src the tails of the edges
+    * @param  dst the heads of the edges
+    * @param  count the number of edges to take from the arrays
+    * @return this builder
+    * @throws IllegalArgumentException if either array is shorter than count
+    */
+   public GraphBuilder addEdges(int[] src, int[] dst, int count) {
+      if (count < 0 || src.length < count || dst.length < count)
+         throw new IllegalArgumentException("Invalid edge count " + count);
+      for (int i = 0; i < count; i++) {
+         if (size == keys.length)
+            compact();
+         keys[size++] = key(src[i], dst[i]);
+      }
+      return this;
+   }
+
+   /**
+    * Returns the graph holding every vertex and edge added so far.
+    * The builder can keep being used afterwards.
+    *
+    * @return a read-only graph without duplicate edges
+    */
+   public CompactDiGraph build() {
+      size = sortUnique(keys, size);
+
+      // Every tail, head and lone vertex, sorted and without repeats
+      int[] ids = new int[2 * size + vertexCount];
+      for (int k = 0; k < size; k++) {
+         ids[2 * k] = tail(keys[k]);
+         ids[2 * k + 1] = head(keys[k]);
+      }
+      System.arraycopy(extraVertices, 0, ids, 2 * size, vertexCount);
+      Arrays.parallelSort(ids);
+      int V = 0;
+      for (int i = 0; i < ids.length; i++) {
+         if (V == 0 || ids[i] != ids[V - 1])
+            ids[V++] = ids[i];
+      }
+      ids = Arrays.copyOf(ids, V);
+
+      // The edges are sorted by tail and then head, so rows come out in order
+      int[] offsets = new int[V + 1];
+      int[] targets = new int[size];
+      int i = 0;
+      for (int k = 0; k < size; k++) {
+         int v = tail(keys[k]);
+         while (ids[i] != v)
+            offsets[++i] = k;
+         targets[k] = Arrays.binarySearch(ids, head(keys[k]));
+      }
+      while (i < V)
+         offsets[++i] = size;
+      return CompactDiGraph.fromOutEdges(IntStore.wrap(ids), IntStore.wrap(offsets), IntStore.wrap(targets));
+   }
+
+   /*
+      Sorts and dedupes the buffer, and grows it if that did not
+      free at least a quarter of it.
+   */
+   private void compact() {
+      size = sortUnique(keys, size);
+      if (size > keys.length - keys.length / 4)
+         keys = Arrays.copyOf(keys, 2 * keys.length);
+   }
+
+   /**
+    * Packs the edge v-w into a long. Sorting the longs orders the
+    * edges by tail and then by head, both as signed ints.
+    *
+    * @param  v the tail of the edge
+    * @param  w the head of the edge
+    * @return the packed edge
+    */
+   static long key(int v, int w) {
+      return ((long) v << 32) | ((w ^ Integer.MIN_VALUE) & 0xFFFFFFFFL);
+   }
+
+   /**
+    * Returns the tail of a packed edge.
+    *
+    * @param  key the packed edge
+    * @return the tail of the edge
+    */
+   static int tail(long key) {
+      return (int) (key >> 32);
+   }
+
+   /**
+    * Returns the head of a packed edge.
+    *
+    * @param  key the packed edge
+    * @return the head of the edge
+    */
+   static int head(long key) {
+      return (int) key ^ Integer.MIN_VALUE;
+   }
+
+   /**
+    * Sorts the first count packed edges and moves the distinct ones
+    * to the front. Arrays.parallelSort splits large ranges across the
+    * common fork/join pool and sorts small ones on the calling thread.
+    *
+    * @param  keys the packed edges
+    * @param  count the number of packed edges in use
+    * @return the number of distinct edges, now at the front of keys
+    */
+   static int sortUnique(long[] keys, int count) {
+      Arrays.parallelSort(keys, 0, count);
+      int n = 0;
+      for (int k = 0; k < count; k++) {
+         if (n == 0 || keys[k] != keys[n - 1])
+            keys[n++] = keys[k];
+      }
+      return n;
+   }
+}
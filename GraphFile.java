@@ -0,0 +1,225 @@
+/******************************************************************************
+ *
+ *  A versioned binary file holding a directed graph and its vertex names.
+ *
+ *  The <tt>GraphFile</tt> class writes a graph in compressed sparse row
+ *  form and opens it again with FileChannel.map, so nothing is parsed or
+ *  hashed when a graph is loaded; the operating system pages the parts
+ *  of the file that queries touch. All values are big-endian ints.
+ *
+ *      header   magic "DIGR", version, flags, V, E, name bytes, 2 unused
+ *      ids      V vertex values, increasing
+ *      offsets  V+1 row offsets
+ *      targets  E dense indices of edge heads
+ *      in-edges V+1 in-offsets, then E dense indices of edge tails
+ *               (only when the HAS_IN_EDGES flag is set)
+ *      names    V+1 byte offsets, then the UTF-8 bytes of every name
+ *               (only when the HAS_NAMES flag is set)
+ *
+ *  Version 1 files never have in-edges; they are rebuilt in memory
+ *  when such a file is opened.
+ *
+ *  The names are mapped apart from the graph, so closing the graph
+ *  alone leaves them mapped. close() releases both, and closeNames()
+ *  only the names, for callers that keep the graph once the names
+ *  have been read.
+ *
+ */
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.function.IntFunction;
+
+public class GraphFile implements Closeable {
+   private static final int MAGIC = 0x44494752;   // "DIGR"
+   private static final int VERSION = 2;
+   private static final int HEADER_BYTES = 32;
+   private static final int HAS_NAMES = 1;
+   private static final int HAS_IN_EDGES = 2;
+
+   private final CompactDiGraph graph;
+   private IntStore nameOffsets;   // null when there are no names, or once closed
+   private ByteBuffer nameBytes;
+
+   private GraphFile(CompactDiGraph graph, IntStore nameOffsets, ByteBuffer nameBytes) {
+      this.graph = graph;
+      this.nameOffsets = nameOffsets;
+      this.nameBytes = nameBytes;
+   }
+
+   /**
+    * Returns the graph stored in this file.
+    *
+    * @return the memory-mapped graph
+    */
+   public CompactDiGraph graph() {
+      return graph;
+   }
+
+   /**
+    * Checks whether this file holds a name for every vertex.
+    *
+    * @return true if the file has a name dictionary, false otherwise
+    */
+   public boolean hasNames() {
+      return nameOffsets != null;
+   }
+
+   /**
+    * Returns the name stored for vertex <tt>v</tt>.
+    *
+    * @param  v the vertex
+    * @return the name of v
+    * @throws IllegalArgumentException if v is not a valid vertex
+    * @throws IllegalStateException if the file has no names
+    */
+   public String name(int v) {
+      if (nameOffsets == null)
+         throw new IllegalStateException("No names in this graph file");
+      int i = graph.indexOf(v);
+      int from = nameOffsets.get(i);
+      byte[] bytes = new byte[nameOffsets.get(i + 1) - from];
+      nameBytes.get(from, bytes);
+      return new String(bytes, StandardCharsets.UTF_8);
+   }
+
+   /**
+    * Releases the mapping behind the names right away, instead of when
+    * the garbage collector finds it. The graph stays open; hasNames()
+    * is false afterwards. No other thread may be reading a name while
+    * this runs.
+    */
+   public void closeNames() {
+      if (nameOffsets == null)
+         return;
+      nameOffsets.free();
+      IntStore.release(nameBytes);
+      nameOffsets = null;
+      nameBytes = null;
+   }
+
+   /**
+    * Releases the mappings behind both the names and the graph. Neither
+    * may be used afterwards, nor while this runs.
+    */
+   @Override
+   public void close() {
+      closeNames();
+      graph.close();
+   }
+
+   /**
+    * Writes a graph, and optionally the names of its vertices, to a file.
+    *
+    * @param  filename the name of the file to create or replace
+    * @param  g the graph to save
+    * @param  names gives the name of each vertex, or null to store no names
+    * @throws IOException if the file cannot be written
+    * @throws IllegalArgumentException if the names take more than 2 GB
+    */
+   public static void write(String filename, DirectedGraph g, IntFunction<String> names) throws IOException {
+      CompactDiGraph csr = g instanceof CompactDiGraph ? (CompactDiGraph) g : CompactDiGraph.copyOf(g);
+      int V = csr.vertices();
+
+      // The names are encoded first so that the header can hold their size
+      byte[][] encoded = null;
+      long total = 0;
+      if (names != null) {
+         encoded = new byte[V][];
+         for (int i = 0; i < V; i++) {
+            encoded[i] = names.apply(csr.vertexAt(i)).getBytes(StandardCharsets.UTF_8);
+            total += encoded[i].length;
+         }
+         if (total > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Names too large: " + total + " bytes");
+      }
+
+      try (DataOutputStream out = new DataOutputStream(
+            new BufferedOutputStream(new FileOutputStream(filename), 1 << 16))) {
+         out.writeInt(MAGIC);
+         out.writeInt(VERSION);
+         out.writeInt(HAS_IN_EDGES | (names != null ? HAS_NAMES : 0));
+         out.writeInt(V);
+         out.writeInt(csr.edges());
+         out.writeInt((int) total);
+         out.writeInt(0);
+         out.writeInt(0);
+         csr.writeTo(out);
+         if (encoded != null) {
+            int offset = 0;
+            out.writeInt(offset);
+            for (byte[] name : encoded) {
+               offset += name.length;
+               out.writeInt(offset);
+            }
+            for (byte[] name : encoded)
+               out.write(name);
+         }
+      }
+   }
+
+   /**
+    * Opens a file written by write. Only the header is read here;
+    * the rest of the file is mapped into memory.
+    *
+    * @param  filename the name of the file
+    * @return the opened file
+    * @throws IOException if the file cannot be read or is not a graph file
+    */
+   public static GraphFile open(String filename) throws IOException {
+      try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+         ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+         while (header.hasRemaining() && channel.read(header) >= 0)
+            ;
+         header.flip();
+         if (header.remaining() < HEADER_BYTES || header.getInt() != MAGIC)
+            throw new IOException("Not a graph file: " + filename);
+         int version = header.getInt();
+         if (version < 1 || version > VERSION)
+            throw new IOException("Unsupported graph file version " + version);
+         int flags = header.getInt();
+         int V = header.getInt();
+         int E = header.getInt();
+         int nameSize = header.getInt();
+
+         long position = HEADER_BYTES;
+         long end = position + 4L * (V + V + 1 + E);
+         if ((flags & HAS_IN_EDGES) != 0)
+            end += 4L * (V + 1 + E);
+         if ((flags & HAS_NAMES) != 0)
+            end += 4L * (V + 1) + nameSize;
+         if (V < 0 || E < 0 || nameSize < 0 || channel.size() < end)
+            throw new IOException("Truncated graph file: " + filename);
+
+         // A mapping stays valid after its channel is closed
+         IntStore ids = IntStore.map(channel, position, V);
+         position += 4L * V;
+         IntStore offsets = IntStore.map(channel, position, V + 1);
+         position += 4L * (V + 1);
+         IntStore targets = IntStore.map(channel, position, E);
+         position += 4L * E;
+         CompactDiGraph graph;
+         if ((flags & HAS_IN_EDGES) != 0) {
+            IntStore inOffsets = IntStore.map(channel, position, V + 1);
+            position += 4L * (V + 1);
+            IntStore sources = IntStore.map(channel, position, E);
+            position += 4L * E;
+            graph = new CompactDiGraph(ids, offsets, targets, inOffsets, sources);
+         }
+         else {
+            graph = CompactDiGraph.fromOutEdges(ids, offsets, targets);
+         }
+
+         if ((flags & HAS_NAMES) == 0)
+            return new GraphFile(graph, null, null);
+         IntStore nameOffsets = IntStore.map(channel, position, V + 1);
+         position += 4L * (V + 1);
+         ByteBuffer nameBytes = channel.map(FileChannel.MapMode.READ_ONLY, position, nameSize);
+         return new GraphFile(graph, nameOffsets, nameBytes);
+      }
+   }
+}
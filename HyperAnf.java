@@ -0,0 +1,324 @@
+/******************************************************************************
+ *
+ *  Estimates how far every vertex of a graph reaches, with HyperANF.
+ *
+ *  The <tt>HyperAnf</tt> class follows Boldi, Rosa and Vigna. Every vertex
+ *  keeps a HyperLogLog counter of m = 2^log2m one-byte registers, which
+ *  starts out holding the vertex itself. On round t each counter is
+ *  replaced by its union with the counters of the vertex's out-neighbors
+ *  (a register-wise maximum), so after t rounds it holds every vertex
+ *  within t edges. The rounds stop once no register changes, and the
+ *  growth of each counter from round to round gives the number of
+ *  vertices first reached at each distance. From that come, per vertex,
+ *  the size of its reachable set and the sum and average of its
+ *  distances.
+ *  Each round costs O(m (V + E)) and the number of rounds is the depth
+ *  of the graph. The memory is two sets of V*m bytes, known in advance
+ *  from memoryBytes and checked against a budget before anything is
+ *  allocated. Each set is cut into chunks of at most 2^CHUNK_SHIFT bytes
+ *  holding whole counters, the way IntStore cuts its arrays, so V*m may
+ *  pass 2^31. The relative standard error of every count is about
+ *  1.04/sqrt(m). Each round is split over the common fork/join pool, and
+ *  vertices are the dense indices of a CompactDiGraph.
+ *
+ */
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+public class HyperAnf {
+   public static final int MIN_LOG2M = 4;
+   public static final int MAX_LOG2M = 16;
+   private static final int MAX_ROUNDS = 1 << 16;
+   private static final int CHUNK_SHIFT = 30;
+   private final CompactDiGraph g;
+   private final int V;
+   private final int log2m;
+   private final int m;
+   private final double alphaMM;          // the bias constant times m^2
+   private final int chunkShift;          // vertices per chunk, as a power of 2
+   private byte[][] registers;            // m per vertex, in chunks
+   private byte[][] nextRegisters;
+   private final double[] reach;          // the latest count of each vertex
+   private final double[] distanceSum;    // the sum of t times the growth on round t
+   private int rounds;
+
+   /**
+    * Runs HyperANF over a graph until every counter stops changing,
+    * with the largest heap the JVM may use as the memory budget.
+    *
+    * @param  g the graph
+    * @param  log2m the log base 2 of the registers per counter,
+    *         between MIN_LOG2M and MAX_LOG2M
+    * @throws IllegalArgumentException if log2m is out of range or the
+    *         counters would not fit in the heap
+    */
+   public HyperAnf(CompactDiGraph g, int log2m) {
+      this(g, log2m, Runtime.getRuntime().maxMemory());
+   }
+
+   /**
+    * Runs HyperANF over a graph until every counter stops changing,
+    * provided its counters fit in the given budget.
+    *
+    * @param  g the graph
+    * @param  log2m the log base 2 of the registers per counter,
+    *         between MIN_LOG2M and MAX_LOG2M
+    * @param  maxBytes the most memory the counters may take up
+    * @throws IllegalArgumentException if log2m is out of range or
+    *         memoryBytes is more than maxBytes
+    */
+   public HyperAnf(CompactDiGraph g, int log2m, long maxBytes) {
+      if (log2m < MIN_LOG2M || log2m > MAX_LOG2M)
+         throw new IllegalArgumentException("Invalid log2m " + log2m);
+      long needed = memoryBytes(g.vertices(), log2m);
+      if (needed > maxBytes)
+         throw new IllegalArgumentException("HyperANF needs " + needed + " bytes of counters for "
+            + g.vertices() + " vertices at log2m " + log2m + ", over the budget of " + maxBytes + " bytes");
+      this.g = g;
+      this.log2m = log2m;
+      V = g.vertices();
+      m = 1 << log2m;
+      alphaMM = alpha(m) * m * m;
+      chunkShift = CHUNK_SHIFT - log2m;
+      registers = allocate();
+      nextRegisters = allocate();
+      reach = new double[V];
+      distanceSum = new double[V];
+
+      for (int v = 0; v < V; v++) {
+         long h = mix(v);
+         int j = (int) (h >>> (64 - log2m));
+         // One more than the leading zeros of the remaining bits
+         int rho = Long.numberOfLeadingZeros((h << log2m) | (1L << (log2m - 1))) + 1;
+         byte[] counter = registers[v >>> chunkShift];
+         int base = offset(v);
+         counter[base + j] = (byte) rho;
+         reach[v] = estimate(counter, base);
+      }
+      int leaf = Math.max(1024, V / (8 * ForkJoinPool.getCommonPoolParallelism()));
+      while (rounds < MAX_ROUNDS) {
+         boolean changed = ForkJoinPool.commonPool().invoke(new Round(this, rounds + 1, 0, V, leaf));
+         if (!changed)
+            break;
+         rounds++;
+         byte[][] swap = registers;
+         registers = nextRegisters;
+         nextRegisters = swap;
+      }
+   }
+
+   /*
+      One set of counters, all zero: full chunks of 2^chunkShift
+      vertices and a last one for the rest.
+   */
+   private byte[][] allocate() {
+      int perChunk = 1 << chunkShift;
+      byte[][] chunks = new byte[(int) ((V + (long) perChunk - 1) >>> chunkShift)][];
+      for (int c = 0; c < chunks.length; c++)
+         chunks[c] = new byte[Math.min(perChunk, V - c * perChunk) << log2m];
+      return chunks;
+   }
+
+   /*
+      Where the counter of v starts within its chunk.
+   */
+   private int offset(int v) {
+      return (v & ((1 << chunkShift) - 1)) << log2m;
+   }
+
+   /**
+    * Returns the smallest log2m whose relative standard error is at most
+    * the one given, within MIN_LOG2M and MAX_LOG2M.
+    *
+    * @param  relativeError the largest acceptable error, like 0.05 for 5%
+    * @return the log base 2 of the registers per counter
+    * @throws IllegalArgumentException if relativeError is not positive
+    */
+   public static int log2mFor(double relativeError) {
+      if (!(relativeError > 0))
+         throw new IllegalArgumentException("Invalid error " + relativeError);
+      int log2m = MIN_LOG2M;
+      while (log2m < MAX_LOG2M && 1.04 / Math.sqrt(1 << log2m) > relativeError)
+         log2m++;
+      return log2m;
+   }
+
+   /**
+    * Returns the number of bytes of counters HyperANF needs for a graph.
+    *
+    * @param  vertices the number of vertices
+    * @param  log2m the log base 2 of the registers per counter
+    * @return the memory taken by the two sets of registers
+    */
+   public static long memoryBytes(int vertices, int log2m) {
+      return 2L * vertices << log2m;
+   }
+
+   /**
+    * Returns the log base 2 of the registers per counter.
+    *
+    * @return log2m
+    */
+   public int log2m() {
+      return log2m;
+   }
+
+   /**
+    * Returns the relative standard error of the counts.
+    *
+    * @return about 1.04/sqrt(m)
+    */
+   public double relativeError() {
+      return 1.04 / Math.sqrt(m);
+   }
+
+   /**
+    * Returns the number of rounds run, which is the greatest distance
+    * between two vertices that can reach each other.
+    *
+    * @return the number of rounds
+    */
+   public int rounds() {
+      return rounds;
+   }
+
+   /**
+    * Returns the estimated number of vertices v can reach.
+    *
+    * @param  v the dense index
+    * @return the size of the reachable set of v, v included
+    */
+   public double reachable(int v) {
+      return reach[v];
+   }
+
+   /**
+    * Returns the estimated sum of the distances from v to every vertex
+    * it reaches.
+    *
+    * @param  v the dense index
+    * @return the total distance
+    */
+   public double distanceSum(int v) {
+      return distanceSum[v];
+   }
+
+   /**
+    * Returns the estimated average distance from v to the other
+    * vertices it reaches.
+    *
+    * @param  v the dense index
+    * @return the average distance, 0 if v reaches nobody else
+    */
+   public double averageDistance(int v) {
+      double others = reach[v] - 1;
+      return others > 0.5 ? distanceSum[v] / others : 0;
+   }
+
+   /*
+      One round over a range of vertices. Returns whether any register
+      in the range changed.
+   */
+   @SuppressWarnings("serial")
+   private static class Round extends RecursiveTask<Boolean> {
+      private final HyperAnf anf;
+      private final int t;
+      private final int from;
+      private final int to;
+      private final int leaf;
+
+      Round(HyperAnf anf, int t, int from, int to, int leaf) {
+         this.anf = anf;
+         this.t = t;
+         this.from = from;
+         this.to = to;
+         this.leaf = leaf;
+      }
+
+      protected Boolean compute() {
+         if (to - from <= leaf)
+            return anf.round(t, from, to);
+         int mid = (from + to) >>> 1;
+         Round left = new Round(anf, t, from, mid, leaf);
+         left.fork();
+         boolean right = new Round(anf, t, mid, to, leaf).compute();
+         return left.join() | right;
+      }
+   }
+
+   /*
+      Unions the counters of the out-neighbors of vertices from..to-1
+      into their own, and credits round t with whatever they gained.
+   */
+   private boolean round(int t, int from, int to) {
+      boolean changed = false;
+      byte[][] current = registers;
+      byte[][] next = nextRegisters;
+      for (int v = from; v < to; v++) {
+         int base = offset(v);
+         byte[] counter = next[v >>> chunkShift];
+         System.arraycopy(current[v >>> chunkShift], base, counter, base, m);
+         boolean grew = false;
+         for (int k = g.firstEdge(v), end = g.firstEdge(v + 1); k < end; k++) {
+            int w = g.target(k);
+            byte[] neighbor = current[w >>> chunkShift];
+            int other = offset(w);
+            for (int j = 0; j < m; j++) {
+               if (neighbor[other + j] > counter[base + j]) {
+                  counter[base + j] = neighbor[other + j];
+                  grew = true;
+               }
+            }
+         }
+         if (grew) {
+            double count = estimate(counter, base);
+            if (count > reach[v]) {
+               distanceSum[v] += t * (count - reach[v]);
+               reach[v] = count;
+            }
+            changed = true;
+         }
+      }
+      return changed;
+   }
+
+   /*
+      The HyperLogLog estimate of the counter starting at base, with
+      linear counting for small sets.
+   */
+   private double estimate(byte[] bits, int base) {
+      double sum = 0;
+      int zeros = 0;
+      for (int j = 0; j < m; j++) {
+         int r = bits[base + j];
+         sum += Double.longBitsToDouble((1023L - r) << 52);   // 2^-r
+         if (r == 0)
+            zeros++;
+      }
+      double estimate = alphaMM / sum;
+      if (estimate <= 2.5 * m && zeros > 0)
+         return m * Math.log((double) m / zeros);
+      return estimate;
+   }
+
+   private static double alpha(int m) {
+      if (m == 16)
+         return 0.673;
+      if (m == 32)
+         return 0.697;
+      if (m == 64)
+         return 0.709;
+      return 0.7213 / (1 + 1.079 / m);
+   }
+
+   /*
+      A 64-bit hash of a vertex (the finalizer of SplitMix64).
+   */
+   private static long mix(int v) {
+      long z = (v + 1) * 0x9E3779B97F4A7C15L;
+      z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+      z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+      return z ^ (z >>> 31);
+   }
+}
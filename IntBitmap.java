@@ -0,0 +1,316 @@
+/******************************************************************************
+ *
+ *  A compressed bitmap of int values, in the style of a Roaring bitmap.
+ *
+ *  The <tt>IntBitmap</tt> class splits every value into a high and a low
+ *  16-bit half. Values sharing a high half go into one container, and
+ *  the containers are kept sorted by that half. A container is either
+ *  - a sorted char[] of low halves, while it holds at most 4096 values, or
+ *  - a 65536-bit long[] bitmap once it holds more.
+ *  So a dense block of values costs one bit each, a sparse one two bytes
+ *  each, and membership is a binary search over the containers plus one
+ *  array probe or bit test. Values are visited in increasing order;
+ *  the sign bit is flipped on the way in so that negative values
+ *  come first.
+ *
+ */
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+class IntBitmap {
+   private static final int ARRAY_LIMIT = 4096;
+   private char[] keys = new char[4];              // high halves, increasing
+   private Container[] containers = new Container[4];
+   private int count;                              // containers in use
+   private int size;                               // values in the bitmap
+
+   /**
+    * Returns the number of values in this bitmap.
+    *
+    * @return the number of values in this bitmap
+    */
+   int size() {
+      return size;
+   }
+
+   /**
+    * Checks whether v is in this bitmap.
+    *
+    * @param  v the value
+    * @return true if v is in the bitmap, false otherwise
+    */
+   boolean contains(int v) {
+      int u = v ^ Integer.MIN_VALUE;
+      int c = find((char) (u >>> 16));
+      return c >= 0 && containers[c].contains((char) u);
+   }
+
+   /**
+    * Adds v to this bitmap.
+    *
+    * @param  v the value
+    * @return true if v was added, false if it was already there
+    */
+   boolean add(int v) {
+      int u = v ^ Integer.MIN_VALUE;
+      char high = (char) (u >>> 16);
+      int c = find(high);
+      if (c < 0) {
+         c = -c - 1;
+         if (count == keys.length) {
+            keys = Arrays.copyOf(keys, 2 * count);
+            containers = Arrays.copyOf(containers, 2 * count);
+         }
+         System.arraycopy(keys, c, keys, c + 1, count - c);
+         System.arraycopy(containers, c, containers, c + 1, count - c);
+         keys[c] = high;
+         containers[c] = new Container();
+         count++;
+      }
+      if (!containers[c].add((char) u))
+         return false;
+      size++;
+      return true;
+   }
+
+   /**
+    * Removes v from this bitmap.
+    *
+    * @param  v the value
+    * @return true if v was removed, false if it was not there
+    */
+   boolean remove(int v) {
+      int u = v ^ Integer.MIN_VALUE;
+      int c = find((char) (u >>> 16));
+      if (c < 0 || !containers[c].remove((char) u))
+         return false;
+      size--;
+      if (containers[c].n == 0) {
+         System.arraycopy(keys, c + 1, keys, c, count - c - 1);
+         System.arraycopy(containers, c + 1, containers, c, count - c - 1);
+         containers[--count] = null;
+      }
+      return true;
+   }
+
+   /**
+    * Passes every value of this bitmap to the given action,
+    * in increasing order.
+    *
+    * @param action the visitor to call once per value
+    */
+   void forEach(IntConsumer action) {
+      for (int c = 0; c < count; c++) {
+         int base = keys[c] << 16;
+         Container container = containers[c];
+         if (container.bits == null) {
+            for (int k = 0; k < container.n; k++)
+               action.accept((base | container.values[k]) ^ Integer.MIN_VALUE);
+         }
+         else {
+            long[] bits = container.bits;
+            for (int w = 0; w < bits.length; w++) {
+               for (long word = bits[w]; word != 0; word &= word - 1)
+                  action.accept((base | (w << 6) | Long.numberOfTrailingZeros(word)) ^ Integer.MIN_VALUE);
+            }
+         }
+      }
+   }
+
+   /**
+    * Counts the values found in both this bitmap and another one.
+    * Containers are matched by their high half; two bitmaps are
+    * intersected a word at a time, two arrays by merging, and an array
+    * with a bitmap by testing each array value.
+    *
+    * @param  other the other bitmap
+    * @return the size of the intersection
+    */
+   int intersectionSize(IntBitmap other) {
+      int common = 0;
+      int i = 0;
+      int j = 0;
+      while (i < count && j < other.count) {
+         if (keys[i] < other.keys[j])
+            i++;
+         else if (keys[i] > other.keys[j])
+            j++;
+         else
+            common += containers[i++].intersectionSize(other.containers[j++]);
+      }
+      return common;
+   }
+
+   /*
+      Binary search for a high half among the containers in use.
+      Returns its position, or -(insertion point) - 1 if it is missing.
+   */
+   private int find(char high) {
+      return Arrays.binarySearch(keys, 0, count, high);
+   }
+
+   /*
+      The values of one high half: a sorted array while there are few,
+      a full bitmap once there are more than ARRAY_LIMIT.
+   */
+   private static class Container {
+      private char[] values = new char[4];
+      private long[] bits;   // null while the container is an array
+      private int n;
+
+      boolean contains(char low) {
+         if (bits != null)
+            return (bits[low >>> 6] & (1L << low)) != 0;
+         return Arrays.binarySearch(values, 0, n, low) >= 0;
+      }
+
+      boolean add(char low) {
+         if (bits != null) {
+            long mask = 1L << low;
+            if ((bits[low >>> 6] & mask) != 0)
+               return false;
+            bits[low >>> 6] |= mask;
+            n++;
+            return true;
+         }
+         int k = Arrays.binarySearch(values, 0, n, low);
+         if (k >= 0)
+            return false;
+         k = -k - 1;
+         if (n == ARRAY_LIMIT) {
+            toBitmap();
+            return add(low);
+         }
+         if (n == values.length)
+            values = Arrays.copyOf(values, Math.min(2 * n, ARRAY_LIMIT));
+         System.arraycopy(values, k, values, k + 1, n - k);
+         values[k] = low;
+         n++;
+         return true;
+      }
+
+      boolean remove(char low) {
+         if (bits != null) {
+            long mask = 1L << low;
+            if ((bits[low >>> 6] & mask) == 0)
+               return false;
+            bits[low >>> 6] &= ~mask;
+            n--;
+            if (n <= ARRAY_LIMIT / 2)
+               toArray();
+            return true;
+         }
+         int k = Arrays.binarySearch(values, 0, n, low);
+         if (k < 0)
+            return false;
+         System.arraycopy(values, k + 1, values, k, n - k - 1);
+         n--;
+         return true;
+      }
+
+      int intersectionSize(Container other) {
+         if (bits != null && other.bits != null) {
+            int common = 0;
+            for (int w = 0; w < bits.length; w++)
+               common += Long.bitCount(bits[w] & other.bits[w]);
+            return common;
+         }
+         if (bits != null)
+            return other.intersectionSize(this);
+         int common = 0;
+         if (other.bits != null) {
+            for (int k = 0; k < n; k++) {
+               if (other.contains(values[k]))
+                  common++;
+            }
+            return common;
+         }
+         for (int i = 0, j = 0; i < n && j < other.n; ) {
+            if (values[i] < other.values[j])
+               i++;
+            else if (values[i] > other.values[j])
+               j++;
+            else {
+               common++;
+               i++;
+               j++;
+            }
+         }
+         return common;
+      }
+
+      private void toBitmap() {
+         bits = new long[1024];
+         for (int k = 0; k < n; k++)
+            bits[values[k] >>> 6] |= 1L << values[k];
+         values = null;
+      }
+
+      private void toArray() {
+         values = new char[n];
+         int k = 0;
+         for (int w = 0; w < bits.length; w++) {
+            for (long word = bits[w]; word != 0; word &= word - 1)
+               values[k++] = (char) ((w << 6) | Long.numberOfTrailingZeros(word));
+         }
+         bits = null;
+      }
+   }
+
+   /**
+    * Walks the values of a bitmap in increasing order without
+    * allocating. One walker can be reset to any number of bitmaps.
+    */
+   static class Walker {
+      private IntBitmap bitmap;
+      private int c;        // current container
+      private int k;        // position in an array container, word in a bitmap one
+      private long word;    // bits of word k still to visit
+      private int left;     // values still to visit
+
+      /**
+       * Positions this walker before the first value of a bitmap.
+       *
+       * @param b the bitmap to walk
+       */
+      void reset(IntBitmap b) {
+         bitmap = b;
+         c = 0;
+         k = 0;
+         word = b.count > 0 && b.containers[0].bits != null ? b.containers[0].bits[0] : 0;
+         left = b.size;
+      }
+
+      boolean hasNext() {
+         return left > 0;
+      }
+
+      int next() {
+         while (true) {
+            Container container = bitmap.containers[c];
+            int base = bitmap.keys[c] << 16;
+            if (container.bits == null) {
+               if (k < container.n) {
+                  left--;
+                  return (base | container.values[k++]) ^ Integer.MIN_VALUE;
+               }
+            }
+            else {
+               while (word == 0 && k < container.bits.length - 1)
+                  word = container.bits[++k];
+               if (word != 0) {
+                  int low = (k << 6) | Long.numberOfTrailingZeros(word);
+                  word &= word - 1;
+                  left--;
+                  return (base | low) ^ Integer.MIN_VALUE;
+               }
+            }
+            // Move on to the next container
+            c++;
+            k = 0;
+            word = bitmap.containers[c].bits != null ? bitmap.containers[c].bits[0] : 0;
+         }
+      }
+   }
+}
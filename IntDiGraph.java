@@ -0,0 +1,453 @@
+/******************************************************************************
+ *
+ *  A directed graph, implemented using primitive int arrays.
+ *  Self-loops allowed.
+ *
+ *  The <tt>IntDiGraph</tt> class has the same operations as a
+ *  <tt>DiGraph</tt> that does not track in-edges, but never boxes a
+ *  vertex:
+ *  - an IntIndexMap gives every vertex a dense index 0..V-1,
+ *  - each index owns a growable int[] holding the indices of its neighbors,
+ *  - duplicate edges are found by scanning the row while it is short,
+ *    and through a per-vertex open-addressing set once it grows longer.
+ *  Both addVertex and addEdge run in amortized constant time. removeEdge
+ *  closes the gap in the row, keeping the order the edges were added,
+ *  and rebuilds the row's set, so it costs the length of the row.
+ *
+ */
+
+import java.io.IOException;
+import java.util.*;
+import java.util.function.IntConsumer;
+
+public class IntDiGraph implements DirectedGraph {
+   private static final String NEWLINE = System.getProperty("line.separator");
+   private static final int[] NO_NEIGHBORS = new int[0];
+   // Rows up to this length are scanned instead of hashed
+   private static final int SCAN_LIMIT = 16;
+   private int V;
+   private int E;
+   private long version;         // counts every change
+   private IntIndexMap index;    // vertex -> dense index
+   private int[] ids;            // dense index -> vertex
+   private int[][] adj;          // neighbor indices, first deg[i] slots used
+   private int[] deg;
+   private NeighborSet[] seen;   // only for rows longer than SCAN_LIMIT
+
+   /**
+    * Initializes an empty graph
+    */
+   public IntDiGraph() {
+      this.V = 0;
+      this.E = 0;
+      index = new IntIndexMap();
+      ids = new int[16];
+      adj = new int[16][];
+      deg = new int[16];
+      seen = new NeighborSet[16];
+   }
+
+   /**
+    * Returns the number of vertices in this graph.
+    *
+    * @return the number of vertices in this graph
+    */
+   public int vertices() {
+      return V;
+   }
+
+   /**
+    * Returns the number of edges in this graph.
+    *
+    * @return the number of edges in this graph
+    */
+   public int edges() {
+      return E;
+   }
+
+   /**
+    * Returns a counter that moves on every vertex or edge added and
+    * every edge removed.
+    *
+    * @return the modification counter of this graph
+    */
+   public long version() {
+      return version;
+   }
+
+   /**
+    * Returns the dense index of a vertex
+    *
+    * @param  v one vertex in the graph
+    * @return the index of v
+    * @throws IllegalArgumentException if v is not a valid vertex
+    */
+   private int indexOf(int v) {
+      int i = index.get(v);
+      if (i < 0)
+         throw new IllegalArgumentException("Invalid Vertex " + v);
+      return i;
+   }
+
+   /**
+    * Adds the vertex v to this graph
+    *
+    * @param  v one vertex in the graph
+    * @return true if v was added, false otherwise
+    */
+   public boolean addVertex(int v) {
+      if (index.get(v) >= 0)
+         return false;
+      if (V == ids.length) {
+         int capacity = 2 * V;
+         ids = Arrays.copyOf(ids, capacity);
+         adj = Arrays.copyOf(adj, capacity);
+         deg = Arrays.copyOf(deg, capacity);
+         seen = Arrays.copyOf(seen, capacity);
+      }
+      ids[V] = v;
+      adj[V] = NO_NEIGHBORS;
+      index.put(v, V);
+      V++;
+      version++;
+      return true;
+   }
+
+   /**
+    * Adds the directed edge v-w to this graph.
+    * The arguments must be valid vertices in the graph.
+    * @param  v one vertex in the edge
+    * @param  w the other vertex in the edge
+    * @return true if edge was added, false otherwise
+    * @throws IllegalArgumentException if either vertex does not exist
+    */
+   public boolean addEdge(int v, int w) {
+      return addIndexEdge(indexOf(v), indexOf(w));
+   }
+
+   /**
+    * Adds the directed edges src[i]-dst[i] for i below count.
+    * Vertices that are not in the graph yet are added as well.
+    * The batch is sorted by tail and deduplicated first, so each
+    * tail is looked up once however many edges it has.
+    *
+    * @param  src the tails of the edges
+    * @param  dst the heads of the edges
+    * @param  count the number of edges to take from the arrays
+    * @return the number of edges that were not in the graph before
+    * @throws IllegalArgumentException if either array is shorter than count
+    */
+   public int addEdges(int[] src, int[] dst, int count) {
+      if (count < 0 || src.length < count || dst.length < count)
+         throw new IllegalArgumentException("Invalid edge count " + count);
+      long[] keys = new long[count];
+      for (int i = 0; i < count; i++)
+         keys[i] = GraphBuilder.key(src[i], dst[i]);
+      int n = GraphBuilder.sortUnique(keys, count);
+
+      int added = 0;
+      int k = 0;
+      while (k < n) {
+         int v = GraphBuilder.tail(keys[k]);
+         addVertex(v);
+         int i = index.get(v);
+         for (; k < n && GraphBuilder.tail(keys[k]) == v; k++) {
+            int w = GraphBuilder.head(keys[k]);
+            addVertex(w);
+            if (addIndexEdge(i, index.get(w)))
+               added++;
+         }
+      }
+      return added;
+   }
+
+   /**
+    * Removes the directed edge v-w from this graph. Both vertices
+    * stay in the graph.
+    *
+    * @param  v the tail of the edge
+    * @param  w the head of the edge
+    * @return true if the edge was removed, false if it was not there
+    * @throws IllegalArgumentException if either vertex does not exist
+    */
+   public boolean removeEdge(int v, int w) {
+      int i = indexOf(v);
+      int j = indexOf(w);
+      if (!contains(i, j))
+         return false;
+      int[] row = adj[i];
+      int k = 0;
+      while (row[k] != j)
+         k++;
+      System.arraycopy(row, k + 1, row, k, deg[i] - k - 1);
+      deg[i]--;
+      // Open addressing cannot simply drop a key, so the set is made anew
+      seen[i] = deg[i] > SCAN_LIMIT ? new NeighborSet(row, deg[i]) : null;
+      E--;
+      version++;
+      return true;
+   }
+
+   /*
+      Adds the edge between two dense indices, if it is not there yet.
+   */
+   private boolean addIndexEdge(int i, int j) {
+      if (contains(i, j))
+         return false;
+      int[] row = adj[i];
+      if (deg[i] == row.length)
+         adj[i] = row = Arrays.copyOf(row, Math.max(4, 2 * row.length));
+      row[deg[i]++] = j;
+      if (seen[i] != null)
+         seen[i].add(j);
+      else if (deg[i] > SCAN_LIMIT)
+         seen[i] = new NeighborSet(row, deg[i]);
+      E++;
+      version++;
+      return true;
+   }
+
+   /*
+      Checks whether index j is already in the row of index i.
+   */
+   private boolean contains(int i, int j) {
+      if (seen[i] != null)
+         return seen[i].contains(j);
+      int[] row = adj[i];
+      for (int k = 0; k < deg[i]; k++) {
+         if (row[k] == j)
+            return true;
+      }
+      return false;
+   }
+
+   /**
+    * Checks whether v is a vertex of this graph.
+    *
+    * @param  v the vertex
+    * @return true if v is in the graph, false otherwise
+    */
+   public boolean hasVertex(int v) {
+      return index.get(v) >= 0;
+   }
+
+   /**
+    * Checks whether the directed edge v-w is in this graph.
+    *
+    * @param  v the tail of the edge
+    * @param  w the head of the edge
+    * @return true if the edge is in the graph, false otherwise
+    * @throws IllegalArgumentException if v is not a valid vertex
+    */
+   public boolean hasEdge(int v, int w) {
+      int i = indexOf(v);
+      int j = index.get(w);
+      return j >= 0 && contains(i, j);
+   }
+
+   /**
+    * Returns the number of edges leaving vertex <tt>v</tt>.
+    *
+    * @param  v the vertex
+    * @return the out-degree of v
+    * @throws IllegalArgumentException if v is not a valid vertex
+    */
+   public int outDegree(int v) {
+      return deg[indexOf(v)];
+   }
+
+   /**
+    * Returns the vertices adjacent to vertex <tt>v</tt>.
+    *
+    * @param  v the vertex
+    * @return a set containing the vertices adjacent to vertex <tt>v</tt>
+    * @throws IllegalArgumentException if v is not a valid vertex
+    */
+   public Set<Integer> getAdjacent(int v) {
+      int i = indexOf(v);
+      Set<Integer> neighbors = new HashSet<>();
+      for (int k = 0; k < deg[i]; k++)
+         neighbors.add(ids[adj[i][k]]);
+      return neighbors;
+   }
+
+   /**
+    * Passes every vertex of this graph to the given action,
+    * in the order they were added.
+    *
+    * @param action the visitor to call once per vertex
+    */
+   public void forEachVertex(IntConsumer action) {
+      for (int i = 0; i < V; i++)
+         action.accept(ids[i]);
+   }
+
+   /**
+    * Passes every vertex adjacent to <tt>v</tt> to the given action,
+    * in the order the edges were added.
+    *
+    * @param  v the vertex
+    * @param  action the visitor to call once per neighbor
+    * @throws IllegalArgumentException if v is not a valid vertex
+    */
+   public void forEachNeighbor(int v, IntConsumer action) {
+      int i = indexOf(v);
+      int[] row = adj[i];
+      for (int k = 0; k < deg[i]; k++)
+         action.accept(ids[row[k]]);
+   }
+
+   /**
+    * Returns a cursor over the neighbors of the vertices of this graph.
+    *
+    * @return a new cursor, not yet positioned on any vertex
+    */
+   public NeighborCursor cursor() {
+      return new RowCursor();
+   }
+
+   /**
+    * Returns an immutable, compressed sparse row copy of this graph.
+    * Later changes to this graph are not reflected in the copy.
+    *
+    * @return a read-only snapshot of this graph
+    */
+   public CompactDiGraph freeze() {
+      return CompactDiGraph.copyOf(this);
+   }
+
+   /**
+    * Saves this graph to a binary GraphFile, which
+    * CompactDiGraph.open can map back into memory.
+    *
+    * @param  filename the name of the file to create or replace
+    * @throws IOException if the file cannot be written
+    */
+   public void save(String filename) throws IOException {
+      GraphFile.write(filename, this, null);
+   }
+
+   /**
+    * Returns the largest number of edges leaving any one vertex.
+    *
+    * @return the highest out-degree in the graph, or 0 if it is empty
+    */
+   public int mostPopular() {
+      int most = 0;
+      for (int i = 0; i < V; i++)
+         most = Math.max(most, deg[i]);
+      return most;
+   }
+
+   /**
+    * Returns a string representation of this graph.
+    *
+    * @return the number of vertices <em>V</em>, followed by the number of edges <em>E</em>,
+    *         followed by the <em>V</em> adjacency lists
+    */
+   public String toString() {
+      StringBuilder s = new StringBuilder();
+      s.append(V + " vertices, " + E + " edges " + NEWLINE);
+      for (int i = 0; i < V; i++) {
+         s.append(ids[i] + ": ");
+         for (int k = 0; k < deg[i]; k++) {
+            s.append(ids[adj[i][k]] + " ");
+         }
+         s.append(NEWLINE);
+      }
+      return s.toString();
+   }
+
+   /*
+      Walks the row of one vertex at a time. The row is read in place,
+      so the graph must not change while a cursor is used.
+   */
+   private class RowCursor implements NeighborCursor {
+      private int[] row = NO_NEIGHBORS;
+      private int k;
+      private int end;
+
+      public void moveTo(int v) {
+         int i = indexOf(v);
+         row = adj[i];
+         k = 0;
+         end = deg[i];
+      }
+
+      public boolean hasNext() {
+         return k < end;
+      }
+
+      public int next() {
+         if (k >= end)
+            throw new NoSuchElementException();
+         return ids[row[k++]];
+      }
+   }
+
+   /*
+      An open-addressing set of neighbor indices. Indices are never
+      negative, so -1 marks an empty slot.
+   */
+   private static class NeighborSet {
+      private int[] table;
+      private int size;
+
+      NeighborSet(int[] row, int n) {
+         table = new int[Integer.highestOneBit(4 * n)];
+         Arrays.fill(table, -1);
+         for (int k = 0; k < n; k++)
+            add(row[k]);
+      }
+
+      boolean contains(int j) {
+         int mask = table.length - 1;
+         for (int slot = IntIndexMap.hash(j) & mask; table[slot] >= 0; slot = (slot + 1) & mask) {
+            if (table[slot] == j)
+               return true;
+         }
+         return false;
+      }
+
+      void add(int j) {
+         if (2 * (size + 1) > table.length) {
+            int[] old = table;
+            table = new int[2 * old.length];
+            Arrays.fill(table, -1);
+            size = 0;
+            for (int x : old) {
+               if (x >= 0)
+                  insert(x);
+            }
+         }
+         insert(j);
+      }
+
+      private void insert(int j) {
+         int mask = table.length - 1;
+         int slot = IntIndexMap.hash(j) & mask;
+         while (table[slot] >= 0) {
+            if (table[slot] == j)
+               return;
+            slot = (slot + 1) & mask;
+         }
+         table[slot] = j;
+         size++;
+      }
+   }
+
+/*
+   Creates a sample graph with 3 vertices and 2 edges.
+*/
+   public static void main(String[] args)
+   {
+      IntDiGraph g = new IntDiGraph();
+      g.addVertex(25);
+      g.addVertex(10);
+      g.addVertex(50);
+      g.addEdge(25, 50);
+      g.addEdge(25, 10);
+      System.out.println(g);
+      System.out.println(g.freeze());
+   }
+}
@@ -0,0 +1,105 @@
+/******************************************************************************
+ *
+ *  An open-addressing hash map from int keys to non-negative int values.
+ *
+ *  The <tt>IntIndexMap</tt> class maps vertex values to their dense
+ *  index without boxing either side. Keys and values live in two
+ *  parallel arrays and collisions are resolved by linear probing;
+ *  a value of -1 marks an empty slot, so any int can be used as a key.
+ *  The table doubles whenever it becomes half full.
+ *
+ */
+
+import java.util.Arrays;
+
+class IntIndexMap {
+   private int[] keys;
+   private int[] values;
+   private int size;
+   private int mask;
+
+   /**
+    * Initializes an empty map
+    */
+   IntIndexMap() {
+      keys = new int[16];
+      values = new int[16];
+      Arrays.fill(values, -1);
+      mask = 15;
+   }
+
+   /**
+    * Returns the number of keys in this map.
+    *
+    * @return the number of keys in this map
+    */
+   int size() {
+      return size;
+   }
+
+   /**
+    * Returns the value stored for the given key.
+    *
+    * @param  key the key to look up
+    * @return the value of the key, or -1 if the key is not in the map
+    */
+   int get(int key) {
+      for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+         if (values[slot] < 0)
+            return -1;
+         if (keys[slot] == key)
+            return values[slot];
+      }
+   }
+
+   /**
+    * Stores a value for the given key, replacing any previous value.
+    *
+    * @param  key the key
+    * @param  value the value, which must not be negative
+    * @throws IllegalArgumentException if value is negative
+    */
+   void put(int key, int value) {
+      if (value < 0)
+         throw new IllegalArgumentException("Negative value " + value);
+      int slot = hash(key) & mask;
+      while (values[slot] >= 0 && keys[slot] != key)
+         slot = (slot + 1) & mask;
+      if (values[slot] < 0)
+         size++;
+      keys[slot] = key;
+      values[slot] = value;
+      if (2 * size > keys.length)
+         grow();
+   }
+
+   /*
+      Doubles the table and re-inserts every key.
+   */
+   private void grow() {
+      int[] oldKeys = keys;
+      int[] oldValues = values;
+      keys = new int[2 * oldKeys.length];
+      values = new int[2 * oldValues.length];
+      Arrays.fill(values, -1);
+      mask = keys.length - 1;
+      for (int i = 0; i < oldKeys.length; i++) {
+         if (oldValues[i] >= 0) {
+            int slot = hash(oldKeys[i]) & mask;
+            while (values[slot] >= 0)
+               slot = (slot + 1) & mask;
+            keys[slot] = oldKeys[i];
+            values[slot] = oldValues[i];
+         }
+      }
+   }
+
+   /*
+      Spreads the bits of the key so that sequential keys and
+      String hash codes both land in different slots.
+   */
+   static int hash(int key) {
+      int h = key * 0x9E3779B9;
+      return h ^ (h >>> 16);
+   }
+}
@@ -0,0 +1,228 @@
+/******************************************************************************
+ *
+ *  An array of ints that may live on the heap, in a mapped file or in
+ *  memory outside the Java heap.
+ *
+ *  The <tt>IntStore</tt> class lets CompactDiGraph read its CSR arrays
+ *  the same way no matter where they are stored. A single NIO buffer
+ *  cannot be larger than 2 GB, so the ints are split into chunks of
+ *  2^28 values and element k is found in chunk k >>> 28. A wrapped
+ *  array that fits in one chunk is also kept as a plain int[]. get reads
+ *  it directly and does not call IntBuffer.get, which has heap, direct
+ *  and mapped implementations and is megamorphic at a shared call site.
+ *  Mapped and direct stores can be released with free() instead of
+ *  waiting for the garbage collector to notice them.
+ *
+ */
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+
+class IntStore {
+   static final int SHIFT = 28;
+   static final int CHUNK = 1 << SHIFT;
+   static final int MASK = CHUNK - 1;
+   // Unsafe.invokeCleaner frees a direct or mapped buffer right away
+   private static final Object UNSAFE;
+   private static final Method INVOKE_CLEANER;
+   private IntBuffer[] chunks;
+   private final ByteBuffer[] owners;   // the buffers behind the chunks, or null on the heap
+   private final int length;
+   private final int[] array;           // the values of a single-chunk heap store, else null
+
+   static {
+      Object unsafe = null;
+      Method invokeCleaner = null;
+      try {
+         Class<?> type = Class.forName("sun.misc.Unsafe");
+         Field field = type.getDeclaredField("theUnsafe");
+         field.setAccessible(true);
+         unsafe = field.get(null);
+         invokeCleaner = type.getMethod("invokeCleaner", ByteBuffer.class);
+      }
+      catch (ReflectiveOperationException | RuntimeException e) {
+         // Without it, freed stores are released by the garbage collector
+      }
+      UNSAFE = unsafe;
+      INVOKE_CLEANER = invokeCleaner;
+   }
+
+   private IntStore(IntBuffer[] chunks, ByteBuffer[] owners, int length, int[] array) {
+      this.chunks = chunks;
+      this.owners = owners;
+      this.length = length;
+      this.array = array;
+   }
+
+   /**
+    * Returns a store that reads the given array. The array is not copied.
+    *
+    * @param  a the values
+    * @return a store over a
+    */
+   static IntStore wrap(int[] a) {
+      IntBuffer[] chunks = new IntBuffer[chunksFor(a.length)];
+      for (int c = 0; c < chunks.length; c++) {
+         int from = c * CHUNK;
+         chunks[c] = IntBuffer.wrap(a, from, Math.min(CHUNK, a.length - from)).slice();
+      }
+      return new IntStore(chunks, null, a.length, chunks.length == 1 ? a : null);
+   }
+
+   /**
+    * Returns a store that reads big-endian ints straight from a file.
+    * The operating system pages the values in when they are first read.
+    *
+    * @param  channel the open file
+    * @param  position the byte offset of the first int
+    * @param  length the number of ints
+    * @return a store over the mapped region
+    * @throws IOException if the region cannot be mapped
+    */
+   static IntStore map(FileChannel channel, long position, int length) throws IOException {
+      IntBuffer[] chunks = new IntBuffer[chunksFor(length)];
+      ByteBuffer[] owners = new ByteBuffer[chunks.length];
+      for (int c = 0; c < chunks.length; c++) {
+         long from = (long) c * CHUNK;
+         long size = 4L * Math.min(CHUNK, length - from);
+         owners[c] = channel.map(FileChannel.MapMode.READ_ONLY, position + 4 * from, size);
+         chunks[c] = owners[c].asIntBuffer();
+      }
+      return new IntStore(chunks, owners, length, null);
+   }
+
+   /**
+    * Returns a copy of a store held in direct memory, outside the Java
+    * heap, in the native byte order. The garbage collector never scans
+    * or moves it.
+    *
+    * @param  source the store to copy
+    * @return a direct store with the same values
+    */
+   static IntStore directCopyOf(IntStore source) {
+      int length = source.length;
+      IntBuffer[] chunks = new IntBuffer[chunksFor(length)];
+      ByteBuffer[] owners = new ByteBuffer[chunks.length];
+      for (int c = 0; c < chunks.length; c++) {
+         int from = c * CHUNK;
+         int size = Math.min(CHUNK, length - from);
+         owners[c] = ByteBuffer.allocateDirect(4 * size).order(ByteOrder.nativeOrder());
+         chunks[c] = owners[c].asIntBuffer();
+         for (int k = 0; k < size; k++)
+            chunks[c].put(k, source.get(from + k));
+      }
+      return new IntStore(chunks, owners, length, null);
+   }
+
+   /**
+    * Checks whether the values of this store are outside the Java heap.
+    *
+    * @return true for mapped and direct stores, false for wrapped arrays
+    */
+   boolean isOffHeap() {
+      return owners != null;
+   }
+
+   /**
+    * Releases the memory or file mapping behind this store at once.
+    * Any later get fails. The caller must make sure that no other
+    * thread is still reading the store, since reading released memory
+    * can crash the JVM. Does nothing for a store over a heap array.
+    */
+   void free() {
+      if (owners == null || chunks.length == 0)
+         return;
+      chunks = new IntBuffer[0];
+      for (ByteBuffer owner : owners)
+         release(owner);
+   }
+
+   /**
+    * Releases the memory or file mapping behind a direct or mapped
+    * buffer at once, under the same conditions as free(). The buffer
+    * is left to the garbage collector if that cannot be done.
+    *
+    * @param  buffer a buffer returned by allocateDirect or map
+    */
+   static void release(ByteBuffer buffer) {
+      if (INVOKE_CLEANER == null)
+         return;
+      try {
+         INVOKE_CLEANER.invoke(UNSAFE, buffer);
+      }
+      catch (ReflectiveOperationException e) {
+         // The buffer is left to the garbage collector
+      }
+   }
+
+   /*
+      The number of chunks needed to hold n ints; always at least one.
+   */
+   private static int chunksFor(int n) {
+      return Math.max(1, (int) ((n + (long) MASK) >>> SHIFT));
+   }
+
+   /**
+    * Returns the number of ints in this store.
+    *
+    * @return the number of ints in this store
+    */
+   int length() {
+      return length;
+   }
+
+   /**
+    * Returns the int at position <tt>k</tt>.
+    *
+    * @param  k the position, between 0 and length()-1
+    * @return the value at k
+    */
+   int get(int k) {
+      int[] a = array;
+      if (a != null)
+         return a[k];
+      return chunks[k >>> SHIFT].get(k & MASK);
+   }
+
+   /**
+    * Searches positions from (inclusive) to to (exclusive), which must
+    * hold increasing values, for the given key.
+    *
+    * @param  from the first position to search
+    * @param  to one past the last position to search
+    * @param  key the value to look for
+    * @return the position of key, or -1 if it is not there
+    */
+   int search(int from, int to, int key) {
+      int lo = from;
+      int hi = to - 1;
+      while (lo <= hi) {
+         int mid = (lo + hi) >>> 1;
+         int value = get(mid);
+         if (value < key)
+            lo = mid + 1;
+         else if (value > key)
+            hi = mid - 1;
+         else
+            return mid;
+      }
+      return -1;
+   }
+
+   /**
+    * Writes every int of this store, big-endian, to the given stream.
+    *
+    * @param  out the stream to write to
+    * @throws IOException if the stream cannot be written
+    */
+   void writeTo(DataOutputStream out) throws IOException {
+      for (int k = 0; k < length; k++)
+         out.writeInt(get(k));
+   }
+}
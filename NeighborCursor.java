@@ -0,0 +1,40 @@
+/******************************************************************************
+ *
+ *  A read-only cursor over the neighbors of a vertex in a DirectedGraph.
+ *
+ *  A <tt>NeighborCursor</tt> is obtained once from a graph and then moved
+ *  to any vertex with moveTo. It hands out the neighbors as plain ints,
+ *  so walking an adjacency list does not box or copy anything.
+ *
+ *      NeighborCursor cursor = graph.cursor();
+ *      cursor.moveTo(v);
+ *      while (cursor.hasNext())
+ *         visit(cursor.next());
+ *
+ */
+
+public interface NeighborCursor {
+
+   /**
+    * Positions this cursor before the first neighbor of vertex <tt>v</tt>.
+    *
+    * @param  v the vertex whose neighbors are to be visited
+    * @throws IllegalArgumentException if v is not a valid vertex
+    */
+   void moveTo(int v);
+
+   /**
+    * Checks whether there are neighbors left to visit.
+    *
+    * @return true if next() will return another neighbor
+    */
+   boolean hasNext();
+
+   /**
+    * Returns the next neighbor of the current vertex.
+    *
+    * @return the next neighbor
+    * @throws java.util.NoSuchElementException if there are no neighbors left
+    */
+   int next();
+}
@@ -0,0 +1,192 @@
+/******************************************************************************
+ *
+ *  PageRank over a CompactDiGraph, computed in parallel.
+ *
+ *  The <tt>PageRank</tt> class runs the power method on primitive double
+ *  arrays. An edge v-w passes a share of the rank of v to w. Each
+ *  iteration pulls: every vertex w sums the shares of the tails of its
+ *  in-edges, read from the CSR in-edge arrays, so no two threads ever
+ *  write the same entry. The rank of vertices without out-edges is
+ *  spread evenly over all vertices, so the ranks always add up to 1.
+ *  Iterations stop once the L1 change between two rounds falls below the
+ *  tolerance. A run can start from the ranks of an earlier one, which
+ *  after a few edge changes is already close to the answer and needs far
+ *  fewer iterations. Both passes of an iteration are split over the
+ *  common fork/join pool, and vertices are dense indices.
+ *
+ */
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+public class PageRank {
+   public static final double DAMPING = 0.85;
+   private static final int LEAF = 1 << 14;
+   private final CompactDiGraph g;
+   private final int V;
+   private final double damping;
+   private final double tolerance;
+   private final int maxIterations;
+   private double[] rank;
+   private double[] next;
+   private final double[] share;    // rank[v] / outdegree(v), 0 for dangling v
+   private double base;             // what every vertex gets before its in-edges, this iteration
+   private int iterations;
+   private double residual;
+
+   /**
+    * Initializes the engine for a graph.
+    *
+    * @param  g the graph
+    * @param  damping the chance of following an edge rather than jumping
+    * @param  tolerance the L1 change at which the iterations stop
+    * @param  maxIterations the most iterations to run
+    * @throws IllegalArgumentException if damping is not between 0 and 1,
+    *         or tolerance or maxIterations is not positive
+    */
+   public PageRank(CompactDiGraph g, double damping, double tolerance, int maxIterations) {
+      if (!(damping >= 0 && damping < 1))
+         throw new IllegalArgumentException("Invalid damping " + damping);
+      if (!(tolerance > 0) || maxIterations <= 0)
+         throw new IllegalArgumentException("Invalid stopping rule " + tolerance + ", " + maxIterations);
+      this.g = g;
+      this.damping = damping;
+      this.tolerance = tolerance;
+      this.maxIterations = maxIterations;
+      V = g.vertices();
+      rank = new double[V];
+      next = new double[V];
+      share = new double[V];
+   }
+
+   /**
+    * Computes the ranks.
+    *
+    * @param  start the ranks to start from, such as those of an earlier
+    *         run; vertices past its end start at 1/V, and the whole is
+    *         scaled to add up to 1. Uniform if null
+    * @return the rank of every vertex, adding up to 1
+    */
+   public double[] run(double[] start) {
+      if (V == 0)
+         return new double[0];
+      Arrays.fill(rank, 1.0 / V);
+      if (start != null) {
+         System.arraycopy(start, 0, rank, 0, Math.min(V, start.length));
+         double total = 0;
+         for (double r : rank)
+            total += r;
+         if (total > 0) {
+            for (int v = 0; v < V; v++)
+               rank[v] /= total;
+         }
+         else
+            Arrays.fill(rank, 1.0 / V);
+      }
+
+      ForkJoinPool pool = ForkJoinPool.commonPool();
+      iterations = 0;
+      residual = Double.POSITIVE_INFINITY;
+      while (iterations < maxIterations && residual >= tolerance) {
+         // Rank left with no edge to follow is shared by everyone
+         double dangling = pool.invoke(new Pass(this, false, 0, V));
+         base = (1 - damping) / V + damping * dangling / V;
+         residual = pool.invoke(new Pass(this, true, 0, V));
+         double[] swap = rank;
+         rank = next;
+         next = swap;
+         iterations++;
+      }
+      return rank.clone();
+   }
+
+   /**
+    * Returns the number of iterations the last run took.
+    *
+    * @return the number of iterations
+    */
+   public int iterations() {
+      return iterations;
+   }
+
+   /**
+    * Returns the L1 change of the last iteration of the last run.
+    *
+    * @return the final residual
+    */
+   public double residual() {
+      return residual;
+   }
+
+   /**
+    * Returns the k vertices of highest rank, ties going to the smaller
+    * index.
+    *
+    * @param  ranks the rank of every vertex
+    * @param  k the number of vertices wanted
+    * @return at most k indices, highest rank first
+    */
+   public static int[] topK(double[] ranks, int k) {
+      TopK top = new TopK(Math.min(k, ranks.length));
+      for (int v = 0; v < ranks.length; v++)
+         top.offer(v, ranks[v]);
+      return top.drain();
+   }
+
+   /*
+      The shares pass fills share[] from rank[] and returns the rank of
+      dangling vertices; the pull pass fills next[] from share[] and
+      returns its L1 distance from rank[].
+   */
+   @SuppressWarnings("serial")
+   private static class Pass extends RecursiveTask<Double> {
+      private final PageRank pr;
+      private final boolean pull;
+      private final int from;
+      private final int to;
+
+      Pass(PageRank pr, boolean pull, int from, int to) {
+         this.pr = pr;
+         this.pull = pull;
+         this.from = from;
+         this.to = to;
+      }
+
+      protected Double compute() {
+         if (to - from <= LEAF)
+            return pull ? pr.pull(from, to) : pr.shares(from, to);
+         int mid = (from + to) >>> 1;
+         Pass left = new Pass(pr, pull, from, mid);
+         left.fork();
+         double right = new Pass(pr, pull, mid, to).compute();
+         return left.join() + right;
+      }
+   }
+
+   private double shares(int from, int to) {
+      double dangling = 0;
+      for (int v = from; v < to; v++) {
+         int degree = g.degreeAt(v);
+         if (degree == 0) {
+            share[v] = 0;
+            dangling += rank[v];
+         }
+         else
+            share[v] = rank[v] / degree;
+      }
+      return dangling;
+   }
+
+   private double pull(int from, int to) {
+      double change = 0;
+      for (int w = from; w < to; w++) {
+         double sum = 0;
+         for (int k = g.firstInEdge(w), end = g.firstInEdge(w + 1); k < end; k++)
+            sum += share[g.source(k)];
+         next[w] = base + damping * sum;
+         change += Math.abs(next[w] - rank[w]);
+      }
+      return change;
+   }
+}
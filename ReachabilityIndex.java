@@ -0,0 +1,320 @@
+/******************************************************************************
+ *
+ *  Answers "can v reach w?" for a graph without searching it.
+ *
+ *  The <tt>ReachabilityIndex</tt> class first finds the strongly connected
+ *  components of a CompactDiGraph with Tarjan's algorithm, run with an
+ *  explicit stack so that long paths cannot overflow the call stack.
+ *  Tarjan finishes a component only after every component it reaches,
+ *  so numbering them in that order makes each edge of the condensed DAG
+ *  go from a higher number to a lower one. The DAG is then given 2-hop
+ *  labels by pruned landmark labeling: the components are taken in order
+ *  of importance, and from each a search forward and one backward over
+ *  the DAG record it in the labels of every component it reaches,
+ *  skipping any component the labels already connect it to. Afterwards
+ *  v reaches w exactly when
+ *  - they are in the same component, or
+ *  - the component of v has the higher number, and the out-label of
+ *    one shares a landmark with the in-label of the other.
+ *  A query is a comparison and the merge of two short sorted lists, and
+ *  a negative answer is as exact as a positive one.
+ *  Vertices are dense indices.
+ *
+ */
+
+import java.util.Arrays;
+
+public class ReachabilityIndex {
+   private final int[] component;        // the component of each vertex
+   private final int components;
+   private final CompactDiGraph dag;     // the condensed graph, one vertex per component
+   private final int[] outOffsets;       // landmarks each component reaches
+   private final int[] outLabels;
+   private final int[] inOffsets;        // landmarks that reach each component
+   private final int[] inLabels;
+
+   /**
+    * Builds the index of a graph.
+    *
+    * @param g the graph
+    */
+   public ReachabilityIndex(CompactDiGraph g) {
+      int V = g.vertices();
+      component = new int[V];
+      components = tarjan(g, component);
+
+      // Component numbers are already dense, so they are the DAG indices
+      GraphBuilder builder = new GraphBuilder();
+      for (int c = 0; c < components; c++)
+         builder.addVertex(c);
+      for (int v = 0; v < V; v++) {
+         for (int k = g.firstEdge(v), end = g.firstEdge(v + 1); k < end; k++) {
+            int w = g.target(k);
+            if (component[v] != component[w])
+               builder.addEdge(component[v], component[w]);
+         }
+      }
+      dag = builder.build();
+
+      // Components with many DAG edges both ways connect the most pairs
+      Integer[] order = new Integer[components];
+      for (int c = 0; c < components; c++)
+         order[c] = c;
+      Arrays.sort(order, (a, b) -> Long.compare(importance(b), importance(a)));
+
+      Labels out = new Labels(components);
+      Labels in = new Labels(components);
+      int[] queue = new int[components];
+      int[] mark = new int[components];   // == rank + 1 once seen from that landmark
+      for (int rank = 0; rank < components; rank++) {
+         int landmark = order[rank];
+         label(landmark, rank, true, out, in, queue, mark);
+         label(landmark, rank, false, out, in, queue, mark);
+      }
+      outOffsets = out.offsets();
+      outLabels = out.values();
+      inOffsets = in.offsets();
+      inLabels = in.values();
+   }
+
+   /**
+    * Checks whether there is a path from v to w.
+    *
+    * @param  v the dense index of the first vertex
+    * @param  w the dense index of the last vertex
+    * @return true if w can be reached from v, including v itself
+    */
+   public boolean reaches(int v, int w) {
+      int a = component[v];
+      int b = component[w];
+      if (a == b)
+         return true;
+      // Edges only lead to components numbered lower
+      if (a < b)
+         return false;
+      return connected(a, b, outOffsets, outLabels, inOffsets, inLabels);
+   }
+
+   /**
+    * Returns the strongly connected component of a vertex.
+    *
+    * @param  v the dense index
+    * @return the component number, between 0 and components()-1
+    */
+   public int component(int v) {
+      return component[v];
+   }
+
+   /**
+    * Returns the number of strongly connected components.
+    *
+    * @return the number of components
+    */
+   public int components() {
+      return components;
+   }
+
+   /**
+    * Returns the condensed graph. Its vertex c is component c, and it
+    * has an edge c-d when some edge of the graph leads from c to d.
+    * Every edge goes to a lower number.
+    *
+    * @return the condensed DAG
+    */
+   public CompactDiGraph dag() {
+      return dag;
+   }
+
+   /**
+    * Returns the total number of landmarks in all labels, a measure of
+    * the size of the index.
+    *
+    * @return the number of label entries
+    */
+   public long labelSize() {
+      return (long) outLabels.length + inLabels.length;
+   }
+
+   /*
+      Numbers the strongly connected components of g, each one after all
+      those it can reach, and stores each vertex's number in component.
+      Returns the number of components.
+   */
+   private static int tarjan(CompactDiGraph g, int[] component) {
+      int V = g.vertices();
+      int[] index = new int[V];
+      int[] low = new int[V];
+      int[] stack = new int[V];    // vertices not yet given a component
+      int[] callVertex = new int[V];
+      int[] callEdge = new int[V];  // the next out-edge to try
+      Arrays.fill(index, -1);
+      Arrays.fill(component, -1);
+      int counter = 0;
+      int sp = 0;
+      int components = 0;
+      for (int s = 0; s < V; s++) {
+         if (index[s] >= 0)
+            continue;
+         index[s] = low[s] = counter++;
+         stack[sp++] = s;
+         int cp = 0;
+         callVertex[cp] = s;
+         callEdge[cp++] = g.firstEdge(s);
+         while (cp > 0) {
+            int v = callVertex[cp - 1];
+            int k = callEdge[cp - 1];
+            if (k < g.firstEdge(v + 1)) {
+               callEdge[cp - 1] = k + 1;
+               int w = g.target(k);
+               if (index[w] < 0) {
+                  // Descend into w, as the recursive version would
+                  index[w] = low[w] = counter++;
+                  stack[sp++] = w;
+                  callVertex[cp] = w;
+                  callEdge[cp++] = g.firstEdge(w);
+               }
+               else if (component[w] < 0)
+                  low[v] = Math.min(low[v], index[w]);
+               continue;
+            }
+            // Every edge of v is done; return to its caller
+            cp--;
+            if (low[v] == index[v]) {
+               int x;
+               do {
+                  x = stack[--sp];
+                  component[x] = components;
+               } while (x != v);
+               components++;
+            }
+            if (cp > 0) {
+               int u = callVertex[cp - 1];
+               low[u] = Math.min(low[u], low[v]);
+            }
+         }
+      }
+      return components;
+   }
+
+   private long importance(int c) {
+      return (long) (dag.degreeAt(c) + 1) * (dag.inDegreeAt(c) + 1);
+   }
+
+   /*
+      Searches the DAG from a landmark, forward or backward, adding its
+      rank to the in-labels (forward) or out-labels (backward) of the
+      components it reaches. A component that the labels so far already
+      connect to the landmark is not labeled or searched past.
+   */
+   private void label(int landmark, int rank, boolean forward, Labels out, Labels in,
+                      int[] queue, int[] mark) {
+      int head = 0;
+      int tail = 0;
+      queue[tail++] = landmark;
+      mark[landmark] = rank + 1;
+      while (head < tail) {
+         int c = queue[head++];
+         if (c != landmark) {
+            boolean known = forward ? connected(landmark, c, out, in) : connected(c, landmark, out, in);
+            if (known)
+               continue;
+         }
+         (forward ? in : out).add(c, rank);
+         int from = forward ? dag.firstEdge(c) : dag.firstInEdge(c);
+         int to = forward ? dag.firstEdge(c + 1) : dag.firstInEdge(c + 1);
+         for (int k = from; k < to; k++) {
+            int d = forward ? dag.target(k) : dag.source(k);
+            if (mark[d] != rank + 1) {
+               mark[d] = rank + 1;
+               queue[tail++] = d;
+            }
+         }
+      }
+      // The forward search marked components; the backward one reuses the marks
+      if (forward) {
+         for (int i = 0; i < tail; i++)
+            mark[queue[i]] = 0;
+      }
+   }
+
+   private static boolean connected(int a, int b, Labels out, Labels in) {
+      return intersects(out.values[a], out.sizes[a], in.values[b], in.sizes[b]);
+   }
+
+   private static boolean connected(int a, int b, int[] outOffsets, int[] outLabels,
+                                    int[] inOffsets, int[] inLabels) {
+      int i = outOffsets[a];
+      int j = inOffsets[b];
+      int iEnd = outOffsets[a + 1];
+      int jEnd = inOffsets[b + 1];
+      while (i < iEnd && j < jEnd) {
+         if (outLabels[i] < inLabels[j])
+            i++;
+         else if (outLabels[i] > inLabels[j])
+            j++;
+         else
+            return true;
+      }
+      return false;
+   }
+
+   /*
+      Checks whether two sorted lists share a value.
+   */
+   private static boolean intersects(int[] a, int n, int[] b, int m) {
+      int i = 0;
+      int j = 0;
+      while (i < n && j < m) {
+         if (a[i] < b[j])
+            i++;
+         else if (a[i] > b[j])
+            j++;
+         else
+            return true;
+      }
+      return false;
+   }
+
+   /*
+      Growable label lists, one per component, filled in increasing
+      rank order and so always sorted.
+   */
+   private static class Labels {
+      private static final int[] EMPTY = new int[0];
+      private final int[][] values;
+      private final int[] sizes;
+      private long total;
+
+      Labels(int n) {
+         values = new int[n][];
+         Arrays.fill(values, EMPTY);
+         sizes = new int[n];
+      }
+
+      void add(int c, int rank) {
+         if (sizes[c] == values[c].length)
+            values[c] = Arrays.copyOf(values[c], Math.max(2, 2 * sizes[c]));
+         values[c][sizes[c]++] = rank;
+         total++;
+      }
+
+      int[] offsets() {
+         int[] offsets = new int[sizes.length + 1];
+         for (int c = 0; c < sizes.length; c++)
+            offsets[c + 1] = offsets[c] + sizes[c];
+         return offsets;
+      }
+
+      int[] values() {
+         if (total > Integer.MAX_VALUE - 8)
+            throw new IllegalStateException("Reachability labels too large: " + total);
+         int[] flat = new int[(int) total];
+         int k = 0;
+         for (int c = 0; c < sizes.length; c++) {
+            System.arraycopy(values[c], 0, flat, k, sizes[c]);
+            k += sizes[c];
+         }
+         return flat;
+      }
+   }
+}
@@ -0,0 +1,216 @@
+/******************************************************************************
+ *
+ *  Suggests whom a vertex could link to next, from the friends of its
+ *  friends.
+ *
+ *  The <tt>Recommender</tt> class scores every vertex two edges away from
+ *  a source, v-w-c, by the middle vertices w that lead to it. Each w
+ *  adds 1, or, in Adamic-Adar mode, 1/ln(deg w), where deg w counts its
+ *  edges both ways, so that a vertex linked to everybody says little
+ *  about any one of them. The source and the vertices it already links
+ *  to are never suggested. Scores go into a dense array, and the indices
+ *  that got one are listed so that only they are ranked and reset. A
+ *  TopK heap keeps the best k. Once built, a query allocates nothing and
+ *  costs the number of two-edge paths from the source.
+ *  Vertices are the dense indices of a CompactDiGraph. One instance
+ *  reuses its arrays for every query and is not thread-safe; the bulk
+ *  method recommendAll gives each fork/join task its own.
+ *
+ */
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+public class Recommender {
+   private final CompactDiGraph g;
+   private final int V;
+   private final int k;
+   private final boolean adamicAdar;
+   private final double[] weight;     // what each middle vertex adds
+   private final double[] score;      // 0 for every index between queries
+   private final int[] touched;       // the indices with a score
+   private final int[] linked;        // == stamp for the source and its neighbors
+   private int stamp;
+   private final TopK top;
+
+   /**
+    * Initializes the engine for a graph.
+    *
+    * @param  g the graph
+    * @param  k the most vertices to suggest per query
+    * @param  adamicAdar true to weight each middle vertex by 1/ln of its
+    *         degree, false to count them
+    * @throws IllegalArgumentException if k is negative
+    */
+   public Recommender(CompactDiGraph g, int k, boolean adamicAdar) {
+      this(g, k, adamicAdar, weights(g, adamicAdar));
+   }
+
+   private Recommender(CompactDiGraph g, int k, boolean adamicAdar, double[] weight) {
+      this.g = g;
+      this.k = k;
+      this.adamicAdar = adamicAdar;
+      this.weight = weight;
+      V = g.vertices();
+      top = new TopK(k);
+      score = new double[V];
+      touched = new int[V];
+      linked = new int[V];
+   }
+
+   /**
+    * Returns the most vertices one query suggests.
+    *
+    * @return k
+    */
+   public int k() {
+      return k;
+   }
+
+   /**
+    * Checks whether middle vertices are weighted by their degree.
+    *
+    * @return true in Adamic-Adar mode
+    */
+   public boolean adamicAdar() {
+      return adamicAdar;
+   }
+
+   /**
+    * Suggests the vertices a source does not link to yet that the most
+    * of its neighbors link to.
+    *
+    * @param  source the dense index of the source
+    * @param  result receives the suggestions, best first, from position 0
+    * @return the number of suggestions, at most k
+    * @throws IllegalArgumentException if source is not a valid index or
+    *         result is shorter than k
+    */
+   public int recommend(int source, int[] result) {
+      if (source < 0 || source >= V)
+         throw new IllegalArgumentException("Invalid Vertex " + source);
+      if (result.length < k)
+         throw new IllegalArgumentException("Array shorter than " + k + " vertices");
+      if (++stamp == Integer.MAX_VALUE) {
+         Arrays.fill(linked, 0);
+         stamp = 1;
+      }
+      int from = g.firstEdge(source);
+      int to = g.firstEdge(source + 1);
+      linked[source] = stamp;
+      for (int i = from; i < to; i++)
+         linked[g.target(i)] = stamp;
+
+      // Every weight is positive, so a score of 0 means not seen yet
+      int count = 0;
+      for (int i = from; i < to; i++) {
+         int w = g.target(i);
+         double x = weight[w];
+         for (int j = g.firstEdge(w), end = g.firstEdge(w + 1); j < end; j++) {
+            int c = g.target(j);
+            if (linked[c] == stamp)
+               continue;
+            if (score[c] == 0)
+               touched[count++] = c;
+            score[c] += x;
+         }
+      }
+      top.clear();
+      for (int i = 0; i < count; i++) {
+         int c = touched[i];
+         top.offer(c, score[c]);
+         score[c] = 0;
+      }
+      return top.drain(result);
+   }
+
+   /**
+    * Suggests vertices for a source.
+    *
+    * @param  source the dense index of the source
+    * @return at most k suggestions, best first
+    * @throws IllegalArgumentException if source is not a valid index
+    */
+   public int[] recommend(int source) {
+      int[] result = new int[k];
+      return Arrays.copyOf(result, recommend(source, result));
+   }
+
+   /**
+    * Suggests vertices for every vertex of a graph, with the sources
+    * spread over the common fork/join pool.
+    *
+    * @param  g the graph
+    * @param  k the most vertices to suggest per source
+    * @param  adamicAdar true to weight each middle vertex by 1/ln of its
+    *         degree, false to count them
+    * @return the suggestions for each index, best first
+    * @throws IllegalArgumentException if k is negative
+    */
+   public static int[][] recommendAll(CompactDiGraph g, int k, boolean adamicAdar) {
+      if (k < 0)
+         throw new IllegalArgumentException("Negative k " + k);
+      int V = g.vertices();
+      int[][] all = new int[V][];
+      // Enough sources per task that its arrays are reused many times
+      int leaf = Math.max(1024, V / (8 * ForkJoinPool.getCommonPoolParallelism()));
+      ForkJoinPool.commonPool().invoke(new All(g, k, adamicAdar, weights(g, adamicAdar), all, 0, V, leaf));
+      return all;
+   }
+
+   /*
+      Returns what each vertex adds to the score of a vertex it leads
+      to. A middle vertex has an edge in and an edge out, so its degree
+      is at least 2 and the logarithm is positive.
+   */
+   private static double[] weights(CompactDiGraph g, boolean adamicAdar) {
+      double[] weight = new double[g.vertices()];
+      for (int w = 0; w < weight.length; w++) {
+         int degree = g.degreeAt(w) + g.inDegreeAt(w);
+         weight[w] = adamicAdar ? 1 / Math.log(Math.max(2, degree)) : 1;
+      }
+      return weight;
+   }
+
+   /*
+      Splits a range of sources in half until it is small enough for
+      one Recommender.
+   */
+   @SuppressWarnings("serial")
+   private static class All extends RecursiveAction {
+      private final CompactDiGraph g;
+      private final int k;
+      private final boolean adamicAdar;
+      private final double[] weight;
+      private final int[][] all;
+      private final int from;
+      private final int to;
+      private final int leaf;
+
+      All(CompactDiGraph g, int k, boolean adamicAdar, double[] weight, int[][] all,
+          int from, int to, int leaf) {
+         this.g = g;
+         this.k = k;
+         this.adamicAdar = adamicAdar;
+         this.weight = weight;
+         this.all = all;
+         this.from = from;
+         this.to = to;
+         this.leaf = leaf;
+      }
+
+      protected void compute() {
+         if (to - from <= leaf) {
+            Recommender recommender = new Recommender(g, k, adamicAdar, weight);
+            int[] result = new int[k];
+            for (int v = from; v < to; v++)
+               all[v] = Arrays.copyOf(result, recommender.recommend(v, result));
+            return;
+         }
+         int mid = (from + to) >>> 1;
+         invokeAll(new All(g, k, adamicAdar, weight, all, from, mid, leaf),
+                   new All(g, k, adamicAdar, weight, all, mid, to, leaf));
+      }
+   }
+}
@@ -16,70 +16,272 @@
 
 // Importing the required classes
 import java.io.*;
+import java.nio.file.NoSuchFileException;
 import java.util.*;
 
 
 public class SocNet{
 
-   // Various data-structures that are required for the implementation
-   private DiGraph graph;
-   private DiGraph followingGraph;
+   /* The graph has an edge from each user to each user they
+      follow, as follow(user1, user2) adds user1->user2; its
+      in-edges give each user's followers, which mostPopular counts */
+   private DirectedGraph followingGraph;
    
-   // A map that helps store a user and his identity in the form of hashcode   
-   private Map<Integer, String> convert;
+   /* Gives each user a dense id from 0 to n-1, which is their vertex
+      in the graph, and turns the ids back into names */
+   private UserDictionary users;
+
+   /* The most recently used search trees, by source, and the
+      version of the graph they were grown on */
+   private Map<Integer, BfsTree> trees;
+   private long treesVersion;
+
+   /* A read-only copy of the graph that searches run on,
+      and the version of the graph it was copied from */
+   private CompactDiGraph snapshot;
+   private long snapshotVersion;
+
+   // Finds paths between two users from both ends, over the snapshot
+   private BidirectionalSearch pathSearch;
+
+   /* Tells whether one user can reach another without a search,
+      and the graph it was built on */
+   private ReachabilityIndex reachability;
+   private CompactDiGraph reachabilityGraph;
+
+   /* The influence score of every user by id, and the graph it was
+      computed on; kept to warm-start the next computation */
+   private double[] influence;
+   private CompactDiGraph influenceGraph;
+
+   // When the scores have settled, and the most rounds to spend on them
+   private static final double INFLUENCE_TOLERANCE = 1e-9;
+   private static final int INFLUENCE_ROUNDS = 100;
+
+   // The triangles and clustering of the network, and their graph
+   private Triangles triangleCounts;
+   private CompactDiGraph triangleGraph;
+
+   /* The last engine used for suggestions, the graph it works on
+      and the array it fills, kept so that asking again allocates
+      nothing but the answer */
+   private Recommender recommender;
+   private CompactDiGraph recommenderGraph;
+   private int[] recommended;
+
+   // The last estimates of how far every user reaches, and their graph
+   private HyperAnf estimates;
+   private CompactDiGraph estimatesGraph;
+
+   /* The number of edges whose reverse is an edge too, and the
+      current leaders. Both are worked out when first asked for and
+      then kept up to date by follow and unfollow */
+   private long reciprocalEdges = -1;
+   private Set<String> leaders;
+
+   /* The most recently used betweenness values, by sample size, and
+      their graph; a sample is always drawn with the same seed */
+   private Map<Integer, Betweenness> betweenness;
+   private CompactDiGraph betweennessGraph;
+   private static final int BETWEENNESS_CACHE = 4;
+   private static final long BETWEENNESS_SEED = 20170505L;
+
+   // The most memory, in bytes, that cached search trees may take up
+   private static final long TREE_CACHE_BYTES = 64L << 20;
 
 /**
    * A constructor that helps initialize the data taken from the input file
    * and creates a graph of users with the edges that show their
-   * relationship via the user's name and the computed hashcode
+   * relationship via the user's name and the id given to it
    
    * @param filename the name of the file where the data lies
 */
    public SocNet(String filename){
-      // Initializing the graphs and the map
-      graph = new DiGraph();
-      followingGraph = new DiGraph();
-      convert = new HashMap<>();
+      // Initializing the graph, with its in-edges indexed, and the users
+      DiGraph followingGraph = new DiGraph(true);
+      this.followingGraph = followingGraph;
+      users = new UserDictionary();
       try{
-         Scanner scan = new Scanner(new File(filename));
-         while(scan.hasNext()){
-            
-            /* The first name is stored as user
-               and it's hashcode is computed */
-            String user = scan.next();
-            int userVertex = user.hashCode();
-            
-            /* The second name is stored as follower
-               and it's hashcode is computed */
-            String follower = scan.next();
-            int followerVertex = follower.hashCode();
-            
-            /* The relationship between the users
-               and the hashcode is established */
-            convert.put(followerVertex, follower);
-            convert.put(userVertex, user);
-            
-            // Adding the vertices to the DiGraph object
-            graph.addVertex(userVertex);
-            graph.addVertex(followerVertex);
-            
-            // Adding the vertices to the DiGraph object
-            followingGraph.addVertex(userVertex);
-            followingGraph.addVertex(followerVertex);
-            
-            /* The edges are added onto the graph which alongwith
-               the vertices depict the relationships and the functioning
-               of the social network */
-            graph.addEdge(followerVertex, userVertex);
-            followingGraph.addEdge(userVertex, followerVertex);
-         
-         
-         }
+         /* The file is parsed in parallel, piece by piece. The names
+            of each piece are looked up or assigned their ids, and its
+            edges are added onto the graph as one batch; one edge serves
+            both directions. The vertices are created by the graph as
+            it needs them */
+         new EdgeFileLoader(users).load(filename, followingGraph::addEdges);
       }
-      /* Attempts to catch a FileNotFoundException */
-      catch(FileNotFoundException e){
+      /* Attempts to catch a missing file */
+      catch(NoSuchFileException e){
          System.out.println("File not Found!");
       }
+      catch(IOException e){
+         throw new UncheckedIOException(e);
+      }
+   }
+
+/**
+   * A constructor for a network whose graphs and users are already known
+   *
+   * @param followingGraph the graph of users, with its in-edges indexed
+   * @param users the name of every user, whose id is their vertex
+*/
+   private SocNet(DirectedGraph followingGraph, UserDictionary users){
+      this.followingGraph = followingGraph;
+      this.users = users;
+   }
+
+/**
+   * Opens a network saved earlier with save. The graph is
+   * memory-mapped from the binary file instead of being rebuilt,
+   * so only the user names are read up front
+   *
+   * @param filename the name of the binary file
+   * @return the network stored in the file
+   * @throws IOException if the file cannot be read or is not a graph file
+*/
+   public static SocNet open(String filename) throws IOException{
+      GraphFile file = GraphFile.open(filename);
+      CompactDiGraph followingGraph = file.graph();
+      UserDictionary users = new UserDictionary();
+      boolean dense = true;
+      for(int i = 0; i < followingGraph.vertices(); i++){
+         users.intern(file.name(followingGraph.vertexAt(i)));
+         dense &= followingGraph.vertexAt(i) == i;
+      }
+      file.closeNames();
+      /* Files saved before users had dense ids are numbered by
+         hashcode; their edges are renumbered once here */
+      if(!dense){
+         GraphBuilder builder = new GraphBuilder();
+         for(int i = 0; i < followingGraph.vertices(); i++){
+            builder.addVertex(i);
+            for(int k = followingGraph.firstEdge(i); k < followingGraph.firstEdge(i+1); k++){
+               builder.addEdge(i, followingGraph.target(k));
+            }
+         }
+         followingGraph = builder.build();
+      }
+      return new SocNet(followingGraph, users);
+   }
+
+/**
+   * Saves this network, users included, to a binary file
+   * that open can load back without parsing
+   *
+   * @param filename the name of the binary file to create or replace
+   * @throws IOException if the file cannot be written
+*/
+   public void save(String filename) throws IOException{
+      GraphFile.write(filename, followingGraph, users::name);
+   }
+
+/**
+   * Records that one user now follows another. Users who are
+   * new to the network join it. Counts kept for reciprocity
+   * and leaders are updated on the spot instead of being
+   * worked out again
+   *
+   * @param user1 the user who follows
+   * @param user2 the user being followed
+   * @return true if user1 did not follow user2 already
+*/
+   public boolean follow(String user1, String user2){
+      DiGraph graph = editableGraph();
+      int n = users.size();
+      int follower = users.intern(user1);
+      int followed = users.intern(user2);
+      graph.addVertex(follower);
+      graph.addVertex(followed);
+      if(leaders != null && users.size() > n){
+         /* More users raise the bar for everyone, so only
+            the current leaders can drop out */
+         leaders.removeIf(name -> !isLeader(users.id(name)));
+      }
+      if(!graph.addEdge(follower, followed)){
+         return false;
+      }
+      if(reciprocalEdges >= 0){
+         // A relation back makes both count; a self-loop is its own reverse
+         if(follower == followed){
+            reciprocalEdges++;
+         }
+         else if(graph.hasEdge(followed, follower)){
+            reciprocalEdges += 2;
+         }
+      }
+      updateLeader(follower);
+      updateLeader(followed);
+      return true;
+   }
+
+/**
+   * Records that one user no longer follows another. Both
+   * users stay in the network
+   *
+   * @param user1 the user who follows
+   * @param user2 the user being followed
+   * @return true if user1 did follow user2
+*/
+   public boolean unfollow(String user1, String user2){
+      int follower = users.id(user1);
+      int followed = users.id(user2);
+      if(follower < 0 || followed < 0){
+         return false;
+      }
+      DiGraph graph = editableGraph();
+      if(!graph.removeEdge(follower, followed)){
+         return false;
+      }
+      if(reciprocalEdges >= 0){
+         if(follower == followed){
+            reciprocalEdges--;
+         }
+         else if(graph.hasEdge(followed, follower)){
+            reciprocalEdges -= 2;
+         }
+      }
+      updateLeader(follower);
+      updateLeader(followed);
+      return true;
+   }
+
+/**
+   * Adds a user to the leaders or takes them out, after their
+   * relations changed
+   *
+   * @param element the id of the user
+*/
+   private void updateLeader(int element){
+      if(leaders == null){
+         return;
+      }
+      if(isLeader(element)){
+         leaders.add(users.name(element));
+      }
+      else{
+         leaders.remove(users.name(element));
+      }
+   }
+
+/**
+   * Returns the graph in a form that can change. A network
+   * opened from a binary file is read-only, so it is copied
+   * into an ordinary graph on the first change
+   *
+   * @return the graph of users, with its in-edges indexed
+*/
+   private DiGraph editableGraph(){
+      if(followingGraph instanceof DiGraph && followingGraph.tracksInEdges()){
+         return (DiGraph) followingGraph;
+      }
+      DirectedGraph old = followingGraph;
+      DiGraph graph = new DiGraph(true);
+      old.forEachVertex(v -> graph.addVertex(v));
+      old.forEachVertex(v -> old.forEachNeighbor(v, w -> graph.addEdge(v, w)));
+      followingGraph = graph;
+      // The new graph counts its versions afresh
+      trees = null;
+      snapshot = null;
+      return graph;
    }
 
 /**
@@ -90,20 +292,27 @@ public class SocNet{
    * @return mostPopular the user who is most popular
 */     
    public String mostPopular(){
-      int popular = 0;
-      String mostPopular = "";
-      // Looping through all the users
-      for(int element : convert.keySet()){
-         /* Looking for the user who's follower
-            list has the largest of size */
-         int size = graph.getAdjacent(element).size();
-         if(size > popular){
-            popular = size;
-            // The name of the user gets saved and is later retrieved
-            mostPopular = convert.get(element);
-         }
+      List<String> top = mostPopular(1);
+      return top.isEmpty() ? "" : top.get(0);
+   }
+
+/**
+   * Returns the k users followed by the most others, most
+   * followed first. Users nobody follows are left out
+   *
+   * @param k the number of users wanted
+   * @return the names of at most k users
+*/
+   public List<String> mostPopular(int k){
+      List<String> popular = new ArrayList<>();
+      /* The graph keeps its users sorted by the size
+         of their follower list */
+      for(int element : followingGraph.topKByInDegree(k)){
+         if(followingGraph.inDegree(element) == 0)
+            break;
+         popular.add(users.name(element));
       }
-      return mostPopular;
+      return popular;
    }
 
 /**
@@ -113,45 +322,197 @@ public class SocNet{
    * @return topFollower the user who mostly follows other users 
 */
    public String topFollower(){
-      int follower = 0;
-      String topFollower = "";
-      // Looping through all the users
-      for(int element : convert.keySet()){
-         /* Utilizes the second graph object 
-            created earlier */
-         int size = followingGraph.getAdjacent(element).size();
-         if(size > follower){
-            // Gets the name of the topFollower from the map
-            follower = size;
-            topFollower = convert.get(element);
+      List<String> top = topFollowers(1);
+      return top.isEmpty() ? "" : top.get(0);
+   }
+
+/**
+   * Returns the k users who follow the most others, biggest
+   * follower first. Users who follow nobody are left out
+   *
+   * @param k the number of users wanted
+   * @return the names of at most k users
+*/
+   public List<String> topFollowers(int k){
+      List<String> followers = new ArrayList<>();
+      /* Utilizes the out-edges of the graph,
+         where mostPopular uses the in-edges */
+      for(int element : followingGraph.topKByOutDegree(k)){
+         if(followingGraph.outDegree(element) == 0)
+            break;
+         followers.add(users.name(element));
+      }
+      return followers;
+   }
+
+/**
+   * Suggests whom a user could follow: the users followed by the
+   * most of the people they follow, leaving out anyone they
+   * follow already
+   *
+   * @param user the name of the user
+   * @param k the number of suggestions wanted
+   * @return the names of at most k users, best first
+*/
+   public List<String> recommend(String user, int k){
+      return recommend(user, k, false);
+   }
+
+/**
+   * Suggests whom a user could follow. In the weighted form each
+   * person they follow counts for less the more relations that
+   * person has (Adamic-Adar), so a crowd following one another
+   * does not drown out a close circle
+   *
+   * @param user the name of the user
+   * @param k the number of suggestions wanted
+   * @param weighted true to weight by Adamic-Adar, false to count
+   * @return the names of at most k users, best first
+*/
+   public List<String> recommend(String user, int k, boolean weighted){
+      int source = idOf(user);
+      CompactDiGraph graph = snapshot();
+      if(recommender == null || recommenderGraph != graph
+            || recommender.k() != k || recommender.adamicAdar() != weighted){
+         recommender = new Recommender(graph, k, weighted);
+         recommenderGraph = graph;
+         recommended = new int[k];
+      }
+      int count = recommender.recommend(source, recommended);
+      List<String> names = new ArrayList<>(count);
+      for(int i = 0; i < count; i++){
+         names.add(users.name(recommended[i]));
+      }
+      return names;
+   }
+
+/**
+   * Works out the suggestions for every user at once, spread
+   * over all processors
+   *
+   * @param k the number of suggestions wanted per user
+   * @param weighted true to weight by Adamic-Adar, false to count
+   * @return the suggestions for each user, by name
+*/
+   public Map<String, List<String>> recommendations(int k, boolean weighted){
+      int[][] all = Recommender.recommendAll(snapshot(), k, weighted);
+      Map<String, List<String>> recommendations = new TreeMap<>();
+      for(int element = 0; element < all.length; element++){
+         List<String> names = new ArrayList<>(all[element].length);
+         for(int other : all[element]){
+            names.add(users.name(other));
          }
+         recommendations.put(users.name(element), names);
       }
-      return topFollower;
+      return recommendations;
+   }
+
+/**
+   * Returns the user with the highest influence score
+   *
+   * @return the most influential user
+*/
+   public String mostInfluential(){
+      List<String> top = mostInfluential(1);
+      return top.isEmpty() ? "" : top.get(0);
+   }
+
+/**
+   * Returns the k users with the highest influence scores, most
+   * influential first. Unlike mostPopular, which only counts
+   * followers, this weighs each follower by their own influence
+   * and divides it among everyone they follow (PageRank), so a
+   * crowd of followers who follow everybody counts for little
+   *
+   * @param k the number of users wanted
+   * @return the names of at most k users
+*/
+   public List<String> mostInfluential(int k){
+      List<String> influential = new ArrayList<>();
+      for(int element : PageRank.topK(influence(), k)){
+         influential.add(users.name(element));
+      }
+      return influential;
+   }
+
+/**
+   * Returns the influence score of a user. The scores of all
+   * users add up to 1
+   *
+   * @param user the name of the user
+   * @return the influence score of the user
+*/
+   public double influence(String user){
+      return influence()[idOf(user)];
+   }
+
+/**
+   * Returns the influence score of every user by id, computing
+   * them again only after the network changes. The last scores
+   * are the starting point, which after a few changes are
+   * nearly right already
+   *
+   * @return the influence scores
+*/
+   private double[] influence(){
+      CompactDiGraph graph = snapshot();
+      if(influence == null || influenceGraph != graph){
+         /* Scores flow along the edges, the same way the
+            in-degree counts towards mostPopular */
+         PageRank pageRank = new PageRank(graph, PageRank.DAMPING,
+            INFLUENCE_TOLERANCE, INFLUENCE_ROUNDS);
+         influence = pageRank.run(influence);
+         influenceGraph = graph;
+      }
+      return influence;
    }
 
 /**
    * This method returns the set of users who are leaders as well.
    * By definion, leaders are those individuals who are 
    * followed by at least 30% of the total users and
-   * their followers are more than following
+   * their followers are more than following. The set is
+   * kept up to date as users follow and unfollow each other
    *
-   * @return leaders the set of users who fulfill the above criteria and are popular
+   * @return leaders the set of users who fulfill the above criteria
+   *         and are popular, as a new set the caller may keep or change
 */
    public Set<String> leaders(){
-      // A new set to hold the result
-      Set<String> leaders = new TreeSet<>();
-      for(int element : convert.keySet()){
-         int size = graph.getAdjacent(element).size();
-         int followSize = followingGraph.getAdjacent(element).size();
-         // More than 30% of the total users need to follow them
-         if(size >= (0.3 * convert.size())){
-            if(size > followSize){
+      if(leaders == null){
+         // A new set to hold the result
+         leaders = new TreeSet<>();
+         /* Only the most followed users can qualify, so they are
+            fetched in growing numbers until one falls short */
+         int[] top = new int[0];
+         int k = 1;
+         boolean done = false;
+         while(!done){
+            top = followingGraph.topKByInDegree(k);
+            done = top.length < k
+               || followingGraph.inDegree(top[top.length-1]) < (0.3 * users.size());
+            k *= 2;
+         }
+         for(int element : top){
+            if(isLeader(element)){
                // Upon qualification, leaders are added to the list
-               leaders.add(convert.get(element));
+               leaders.add(users.name(element));
             }
          }
       }
-          return leaders;
+      return new TreeSet<>(leaders);
+   }
+
+/**
+   * Checks whether a user is a leader right now
+   *
+   * @param element the id of the user
+   * @return true if they are followed by at least 30% of the
+   *         users, and by more users than they follow
+*/
+   private boolean isLeader(int element){
+      int size = followingGraph.inDegree(element);
+      int followSize = followingGraph.outDegree(element);
+      return size >= (0.3 * users.size()) && size > followSize;
    }
 
 /**
@@ -163,8 +524,8 @@ public class SocNet{
 */
    public double density(){
       // Uses the vertices method from the DiGraph class
-      int N = graph.vertices();
-      double numberEdges = (double) graph.edges();
+      int N = followingGraph.vertices();
+      double numberEdges = (double) followingGraph.edges();
       // This gives the density of the graph
       return (numberEdges / (N * (N-1)));
    }
@@ -177,19 +538,75 @@ public class SocNet{
    * @return the reciprocity of the graph
 */  
    public double reciprocity(){
-      int count = 0;
-      //Iterating through the elements
-      for(int element : convert.keySet()){
-         /* This nested loop looks for both-way relations 
-            and symmetric edges */
-         for(int entry : graph.getAdjacent(element)){
-            if(followingGraph.getAdjacent(element).contains(entry)){
-               count++;
-            }     
-         }
+      /* The relations are only counted the first time; follow and
+         unfollow keep the count after that */
+      if(reciprocalEdges < 0){
+         reciprocalEdges = countReciprocal();
       }
-      // For the accurate computation
-      return ((double)count / graph.edges());
+      return ((double)reciprocalEdges / followingGraph.edges());
+   }
+
+/**
+   * Counts the edges whose reverse is in the graph as well. The
+   * same parallel pass over the sorted relations of every user
+   * also counts the triangles, so those are ready afterwards
+   *
+   * @return the number of symmetrical edges
+*/
+   private long countReciprocal(){
+      return triangleCounts().reciprocalEdges();
+   }
+
+/**
+   * Returns the number of triangles in the network: groups of
+   * three users where each one follows or is followed by both
+   * of the others
+   *
+   * @return the number of triangles
+*/
+   public long triangles(){
+      return triangleCounts().triangles();
+   }
+
+/**
+   * Returns the clustering coefficient of a user, the fraction
+   * of the pairs of their contacts, in either direction, that
+   * are contacts of each other too
+   *
+   * @param user the name of the user
+   * @return the coefficient, 0 for users with fewer than two contacts
+*/
+   public double clustering(String user){
+      return triangleCounts().clustering(idOf(user));
+   }
+
+/**
+   * Computes the clustering coefficient of every user at once
+   *
+   * @return the coefficient of each user, by name
+*/
+   public Map<String, Double> clusterings(){
+      Triangles counts = triangleCounts();
+      Map<String, Double> clusterings = new TreeMap<>();
+      for(int element = 0; element < users.size(); element++){
+         clusterings.put(users.name(element), counts.clustering(element));
+      }
+      return clusterings;
+   }
+
+/**
+   * Returns the triangle counts of the current network,
+   * counting them again only after it changes
+   *
+   * @return the counts
+*/
+   private Triangles triangleCounts(){
+      CompactDiGraph graph = snapshot();
+      if(triangleCounts == null || triangleGraph != graph){
+         triangleCounts = new Triangles(graph);
+         triangleGraph = graph;
+      }
+      return triangleCounts;
    }
   
 /**
@@ -206,7 +623,7 @@ public class SocNet{
       int distance = 0;
       // If the users are equal, their distance is zero
       if(!(user1.equals(user2))){
-         distance = BFT(user1, user2).size();
+         distance = BFT(user1, user2).length;
          if(distance==0){
             /* As per instructions, for the vertices that don't
                end on each other, the max value of Integer is 
@@ -229,16 +646,17 @@ public class SocNet{
    public String path(String user1, String user2){
       // Creating a new StringBuilder object  
       StringBuilder sb = new StringBuilder();
+      int[] path = BFT(user1, user2);
       //If there is no path then NONE is returned
-      if((BFT(user1,user2)).size() == 0)
+      if(path.length == 0)
          sb.append("[NONE]");
       else{
          /* The path is properly formatted and appended
             into the StringBuilder object to be returned
          */
          sb.append("["+user1);
-         for(int i = BFT(user1,user2).size()-1; i>=0; i--){
-            sb.append("|"+BFT(user1,user2).get(i));
+         for(int element : path){
+            sb.append("|"+users.name(element));
          }
          sb.append("]");
       }
@@ -254,15 +672,128 @@ public class SocNet{
    * @return the centrality of the user on the graph
 */   
    public double centrality(String user){
-      double distance = 0;
-      // Iterating through the available user list
-      for(int element : convert.keySet()){
-         /* Overall sum of the distance from a user to all
-            other users */
-         distance += distance(user, convert.get(element));
-      }
+      // One search from the user answers every distance
+      BfsTree tree = tree(user);
       // Computes centrality
-      return distance /(convert.size()-1);
+      return farness(tree.distanceSum(), tree.reached()) /(users.size()-1);
+   }
+
+/**
+   * Computes the centrality of every user at once. The users
+   * are searched from in batches of 256, sharing each pass
+   * over the relations, and the batches are spread over all
+   * processors
+   *
+   * @return the centrality of each user, by name
+*/
+   public Map<String, Double> centralities(){
+      int n = users.size();
+      long[] sums = new long[n];
+      int[] reached = new int[n];
+      BreadthFirst.distanceSums(snapshot(), sums, reached);
+      Map<String, Double> centralities = new TreeMap<>();
+      for(int element = 0; element < n; element++){
+         centralities.put(users.name(element), farness(sums[element], reached[element]) /(n-1));
+      }
+      return centralities;
+   }
+
+/**
+   * Returns the betweenness of a user: over every pair of other
+   * users, the share of the shortest paths between them that
+   * pass through this user. Users with a high value broker
+   * between parts of the network. The first call searches from
+   * every user, which takes time in proportion to the users
+   * times the relations
+   *
+   * @param user the name of the user
+   * @return the betweenness of the user
+*/
+   public double betweenness(String user){
+      return betweenness(users.size()).centrality(idOf(user));
+   }
+
+/**
+   * Estimates the betweenness of a user from searches out of a
+   * random sample of users, which keeps large networks tractable
+   *
+   * @param user the name of the user
+   * @param samples the number of users to search from
+   * @return the estimate, within about standardError of the value
+*/
+   public double betweennessEstimate(String user, int samples){
+      return betweenness(samples).centrality(idOf(user));
+   }
+
+/**
+   * Returns the standard error of betweennessEstimate for the
+   * same user and sample size
+   *
+   * @param user the name of the user
+   * @param samples the number of users to search from
+   * @return the standard error, 0 if every user was searched from
+*/
+   public double betweennessError(String user, int samples){
+      return betweenness(samples).standardError(idOf(user));
+   }
+
+/**
+   * Returns the k users with the highest betweenness, as
+   * estimated from a sample of users
+   *
+   * @param k the number of users wanted
+   * @param samples the number of users to search from; the
+   *        number of users or more gives the exact ranking
+   * @return the names of at most k users, highest first
+*/
+   public List<String> brokers(int k, int samples){
+      List<String> brokers = new ArrayList<>();
+      for(int element : betweenness(samples).top(k)){
+         brokers.add(users.name(element));
+      }
+      return brokers;
+   }
+
+/**
+   * Returns betweenness values for the current network from
+   * exactly the number of sources asked for, or every user if
+   * that is fewer, computing them if needed. Values for a few
+   * sample sizes are kept, so that an estimate and its error
+   * always come from the same sample
+   *
+   * @param samples the number of users to search from
+   * @return the values
+*/
+   private Betweenness betweenness(int samples){
+      CompactDiGraph graph = snapshot();
+      if(betweenness == null || betweennessGraph != graph){
+         betweenness = new LinkedHashMap<Integer, Betweenness>(16, 0.75f, true){
+            protected boolean removeEldestEntry(Map.Entry<Integer, Betweenness> eldest){
+               return size() > BETWEENNESS_CACHE;
+            }
+         };
+         betweennessGraph = graph;
+      }
+      int size = Math.max(1, Math.min(samples, graph.vertices()));
+      Betweenness values = betweenness.get(size);
+      if(values == null){
+         values = new Betweenness(graph, size, BETWEENNESS_SEED);
+         betweenness.put(size, values);
+      }
+      return values;
+   }
+
+/**
+   * Returns the overall sum of the distance from a user to all
+   * other users, where users that cannot be reached count as
+   * the max value of Integer
+   *
+   * @param distanceSum the distances to the users that are reached
+   * @param reached the number of users reached, the user included
+   * @return the total distance
+*/
+   private double farness(long distanceSum, int reached){
+      return (double) (distanceSum + (long) (users.size() - reached) * Integer.MAX_VALUE);
    }
 
 /**
@@ -274,72 +805,253 @@ public class SocNet{
 */
    public Set<String> reachable(String user){
       Set<String> reachable = new TreeSet<String>();
-      for(int element : convert.keySet()){
-         // Checks to see if there is indeed any members
-         if(! (path(user, convert.get(element)).equals("[NONE]"))){
+      BfsTree tree = tree(user);
+      for(int element = 0; element < users.size(); element++){
+         // Checks to see if there is indeed any path to them
+         if(tree.distance(element) > 0){
             // If yes, they are added to the set and returned
-            reachable.add(convert.get(element));
+            reachable.add(users.name(element));
          }
       }
       return reachable;
    }  
 
 /**
-   * A private method that implements the breadth first
-   * search and returns the shortest possible path between
-   * the two users
+   * Estimates the number of users reachable from a user, for
+   * networks too large to search from everyone. All users are
+   * estimated together the first time, and again only after
+   * the network changes or a smaller error is asked for
+   *
+   * @param user the name of the user
+   * @param error the relative error allowed, like 0.05 for 5%
+   * @return about as many users as reachable(user) holds
+*/
+   public double reachableEstimate(String user, double error){
+      // The user is counted by the estimate but not by reachable
+      return Math.max(0, estimates(error).reachable(idOf(user)) - 1);
+   }
+
+/**
+   * Estimates the mean length of the shortest paths from a
+   * user to the users they can reach
+   *
+   * @param user the name of the user
+   * @param error the relative error allowed, like 0.05 for 5%
+   * @return the average distance, 0 if they reach nobody
+*/
+   public double averageDistanceEstimate(String user, double error){
+      return estimates(error).averageDistance(idOf(user));
+   }
+
+/**
+   * Estimates the closeness of every user: the number of users
+   * they reach divided by the total distance to them. Unlike
+   * centrality, users that cannot be reached are left out
+   * rather than counted as far away, and higher means closer
+   *
+   * @param error the relative error allowed, like 0.05 for 5%
+   * @return the estimated closeness of each user, by name
+*/
+   public Map<String, Double> closenessEstimates(double error){
+      HyperAnf anf = estimates(error);
+      Map<String, Double> closeness = new TreeMap<>();
+      for(int element = 0; element < users.size(); element++){
+         double distance = anf.distanceSum(element);
+         closeness.put(users.name(element),
+            distance > 0 ? (anf.reachable(element) - 1) / distance : 0);
+      }
+      return closeness;
+   }
+
+/**
+   * Returns the estimates for the current network that are at
+   * least as precise as asked for, running HyperANF if needed
+   *
+   * @param error the relative error allowed
+   * @return the estimates
+*/
+   private HyperAnf estimates(double error){
+      int log2m = HyperAnf.log2mFor(error);
+      CompactDiGraph graph = snapshot();
+      if(estimates == null || estimatesGraph != graph
+            || estimates.log2m() < log2m){
+         estimates = new HyperAnf(graph, log2m);
+         estimatesGraph = graph;
+      }
+      return estimates;
+   }
+
+/**
+   * Returns the id of a user who must exist
+   *
+   * @param user the name of the user
+   * @return the id of the user
+   * @throws IllegalArgumentException if nobody has that name
+*/
+   private int idOf(String user){
+      int id = users.id(user);
+      if(id < 0){
+         throw new IllegalArgumentException("Unknown user " + user);
+      }
+      return id;
+   }
+
+/**
+   * Checks whether there is a path from one user to another.
+   * The first call on a network groups the users into sets
+   * that all reach each other and labels each set with a few
+   * others on its paths, after which every answer, yes or no,
+   * comes from comparing two short lists
+   *
+   * @param user1 the source user
+   * @param user2 the destination user
+   * @return true if user2 can be reached from user1, or they
+   *         are the same user
+   * @throws IllegalArgumentException if user1 is unknown
+*/
+   public boolean canReach(String user1, String user2){
+      int source = idOf(user1);
+      int destination = users.id(user2);
+      if(destination < 0){
+         return false;
+      }
+      return reachability().reaches(source, destination);
+   }
+
+/**
+   * Returns the reachability index of the current network,
+   * built again only after it changes
+   *
+   * @return the index
+*/
+   private ReachabilityIndex reachability(){
+      CompactDiGraph graph = snapshot();
+      if(reachability == null || reachabilityGraph != graph){
+         reachability = new ReachabilityIndex(graph);
+         reachabilityGraph = graph;
+      }
+      return reachability;
+   }
+
+/**
+   * Returns the greatest distance from a user to any of
+   * the users they can reach. The search switches to
+   * scanning followers once most of the network is in
+   * reach, which checks far fewer relations
+   *
+   * @param user the name of the user
+   * @return the eccentricity of the user, 0 if they reach nobody
+*/
+   public int eccentricity(String user){
+      int source = idOf(user);
+      DirectionOptimizingBfs search = new DirectionOptimizingBfs(snapshot());
+      search.search(source);
+      return search.depth();
+   }
+
+/**
+   * A private method that returns the shortest possible
+   * path between the two users. A search tree kept for the
+   * first user answers at once; otherwise the path is searched
+   * for from both users until the two searches meet, which
+   * touches far fewer users than a search from one side
    *
    * @param user1 the source user
    * @param user2 the destination user
-   * @return the list of the most efficient ways to reach the destination
+   * @return the users after user1 on the path, ending with user2;
+   *         empty if there is no path or the users are the same
 */   
- private List<String> BFT(String user1, String user2){
-   
-      // path will store the final result
-      List<String> path = new LinkedList<>();
-      // Keeps track of the latest moves
-      Map<Integer, Integer> prev = new HashMap<>();
-      // Helps us avoid the repetative visit of the same vertices
-      Set<Integer> visited = new HashSet<>();
-      // A queue to implement breadth first search
-      Queue<Integer> queue = new LinkedList<Integer>();
-      
-     /* converting the names to hashcodes */
-      int source = user1.hashCode();
-      int destination = user2.hashCode();
-      int current = source;
-     
-      /* First node is added to the queue and is marked visited */
-      queue.add(current);
-      visited.add(current);
-      
-      while(!queue.isEmpty()){
-         current = queue.poll();
-         /* If the searched for user is found,
-            we break out of the loop */
-         if(current==destination){
-            break;}
-         else{
-            for(int element : followingGraph.getAdjacent(current)){
-               // If a new node or an area is entered
-               if(!visited.contains(element)){
-                  queue.add(element);
-                  visited.add(element);
-                  prev.put(element,current);
-               } 
+ private int[] BFT(String user1, String user2){
+      int source = idOf(user1);
+      /* a destination nobody has heard of is never reached */
+      int destination = users.id(user2);
+      if(destination < 0){
+         return new int[0];
+      }
+      CompactDiGraph graph = snapshot();
+      if(trees != null && treesVersion == followingGraph.version() && trees.containsKey(source)){
+         return trees.get(source).pathTo(destination);
+      }
+      /* users that cannot reach each other are known without
+         searching, which would otherwise cover everything the
+         source reaches */
+      if(!reachability().reaches(source, destination)){
+         return new int[0];
+      }
+      if(pathSearch == null || pathSearch.graph() != graph){
+         pathSearch = new BidirectionalSearch(graph);
+      }
+      return pathSearch.path(source, destination);
+   }
+
+/**
+   * Returns the breadth first search tree of a user. Trees are
+   * kept, least recently used first, so that repeated questions
+   * about the same user search the graph only once; all of them
+   * are dropped as soon as the graph changes
+   *
+   * @param user the source user
+   * @return the search tree grown from the user
+   * @throws IllegalArgumentException if nobody has that name
+*/
+   private BfsTree tree(String user){
+      int source = idOf(user);
+      int n = users.size();
+      if(trees == null || treesVersion != followingGraph.version()){
+         // Each tree holds two ints for every user
+         int capacity = (int) Math.max(1, Math.min(1024, TREE_CACHE_BYTES / (8L * Math.max(1, n))));
+         trees = new LinkedHashMap<Integer, BfsTree>(16, 0.75f, true){
+            protected boolean removeEldestEntry(Map.Entry<Integer, BfsTree> eldest){
+               return size() > capacity;
             }
-         }
+         };
+         treesVersion = followingGraph.version();
       }
-      if(current!=destination){
-         return path;
+      BfsTree tree = trees.get(source);
+      if(tree == null){
+         tree = new BfsTree(snapshot(), source);
+         trees.put(source, tree);
       }
-      else{
-         for(int i = destination; i != source; i = prev.get(i))
-         {
-            path.add(convert.get(i));
-         }
-         return path;
+      return tree;
+   }
+
+/**
+   * Returns a graph of the network that no later change will
+   * touch, so that other threads can read it while this network
+   * keeps changing
+   *
+   * @return the graph in compact form; index i is the user with id i
+*/
+   CompactDiGraph frozenGraph(){
+      return snapshot();
+   }
+
+/**
+   * Returns the user names as they are now, in a copy that no
+   * later change will touch
+   *
+   * @return the names, by id
+*/
+   UserDictionary frozenUsers(){
+      return users.copy();
+   }
+
+/**
+   * Returns a read-only copy of the graph for searching, made
+   * again only after the graph changes. Ids are dense, so the
+   * index of each user in the copy is their id
+   *
+   * @return the graph in compact form
+*/
+   private CompactDiGraph snapshot(){
+      if(followingGraph instanceof CompactDiGraph){
+         return (CompactDiGraph) followingGraph;
       }
-   }  
+      if(snapshot == null || snapshotVersion != followingGraph.version()){
+         snapshot = CompactDiGraph.copyOf(followingGraph);
+         snapshotVersion = followingGraph.version();
+      }
+      return snapshot;
+   }
 
 }
\ No newline at end of file
@@ -0,0 +1,695 @@
+/******************************************************************************
+ *
+ *  Answers questions about a SocNet from many threads at once, in
+ *  process or over a local HTTP port.
+ *
+ *  The <tt>SocNetService</tt> class owns a SocNet and never lets two
+ *  threads into it together. Every read runs against a Snapshot: a
+ *  CompactDiGraph and a copy of the user names that nothing changes
+ *  after it is published, so any number of readers share it without
+ *  locks. follow and unfollow change the SocNet under a lock and log
+ *  each change they make, and every snapshot records how many changes
+ *  it holds. A new snapshot takes the changes logged since the last one
+ *  while holding that lock, which costs only their number. It then
+ *  merges them into the rows of the last graph without the lock, so
+ *  writers never wait for a rebuild.
+ *  With refreshMillis 0, a read that finds the snapshot behind waits
+ *  for one that holds every change finished before it. Otherwise the
+ *  first read at least refreshMillis after the last publication builds
+ *  a new one, unless another thread is at it, and the others keep
+ *  using the old one until it is swapped in. Since each snapshot copies
+ *  the whole graph, refreshMillis 0 makes every read after a write pay
+ *  for a rebuild, so main waits DEFAULT_REFRESH_MILLIS between them
+ *  unless told otherwise.
+ *  Questions about one source (reachable, centrality) need its whole
+ *  breadth-first tree. Each snapshot keeps the most recently used trees,
+ *  as SocNet does, and registers a search in progress, so a request for
+ *  the same source that arrives meanwhile waits for that search instead
+ *  of starting another and a burst of requests about a popular user
+ *  costs one traversal. distance and path use a kept tree of the source
+ *  if there is one. Otherwise the snapshot's ReachabilityIndex, built on
+ *  first use, rules out users that cannot reach each other, and the rest
+ *  are searched from both ends with a BidirectionalSearch per worker
+ *  thread, which touches a small part of the graph. A snapshot that only
+ *  lost edges keeps the index of the one before it: a path it denies
+ *  still cannot exist, and one it allows is searched for anyway.
+ *  Requests run on a fixed pool of worker threads. The JDK this code
+ *  targets has no virtual threads, and the searches keep the workers
+ *  busy rather than blocked, so one thread per processor is enough.
+ *  The HTTP front end uses the JDK's built-in server on the loopback
+ *  interface only. It serves GET /distance?from=a&to=b, /path?from=a&to=b,
+ *  /reachable?user=a, /centrality?user=a, /popular?k=n, /followers?k=n
+ *  and /stats, and POST /follow?from=a&to=b and /unfollow?from=a&to=b.
+ *
+ */
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+public class SocNetService {
+   private final SocNet network;               // only touched while holding lock
+   private final ReentrantLock lock = new ReentrantLock();
+   private final ReentrantLock refreshing = new ReentrantLock();   // held while building a snapshot
+   private final List<Change> changes = new ArrayList<>();        // under lock, from version changesStart
+   private long changesStart;
+   private final long refreshMillis;
+   private final ExecutorService workers;
+   private volatile Snapshot current;
+   private volatile long written;              // the changes made so far
+   private HttpServer server;
+   private final LongAdder requests = new LongAdder();
+   private final LongAdder searches = new LongAdder();
+   private final LongAdder coalesced = new LongAdder();
+   private final LongAdder cached = new LongAdder();
+   private final ThreadLocal<BidirectionalSearch> pathSearch = new ThreadLocal<>();
+
+   // The most memory, in bytes, that the search trees of a snapshot may take up
+   private static final long TREE_CACHE_BYTES = 64L << 20;
+
+   // The least milliseconds between snapshots when main is not given any
+   private static final long DEFAULT_REFRESH_MILLIS = 100;
+
+   /**
+    * Starts serving a network. The network must not be used directly
+    * afterwards.
+    *
+    * @param  network the network to serve
+    * @param  threads the number of worker threads
+    * @param  refreshMillis the least time between two snapshots, 0 to
+    *         let every read see all changes made before it
+    * @throws IllegalArgumentException if threads is not positive or
+    *         refreshMillis is negative
+    */
+   public SocNetService(SocNet network, int threads, long refreshMillis) {
+      if (threads <= 0 || refreshMillis < 0)
+         throw new IllegalArgumentException("Invalid service settings " + threads + ", " + refreshMillis);
+      this.network = network;
+      this.refreshMillis = refreshMillis;
+      workers = Executors.newFixedThreadPool(threads, runnable -> {
+         Thread thread = new Thread(runnable, "socnet-worker");
+         thread.setDaemon(true);
+         return thread;
+      });
+      current = new Snapshot(network.frozenGraph(), network.frozenUsers(), 0, null);
+   }
+
+   /**
+    * Returns the number of edges on a shortest path between two users.
+    *
+    * @param  user1 the starting user
+    * @param  user2 the destination user
+    * @return the distance, 0 for the same user and Integer.MAX_VALUE
+    *         if user2 cannot be reached
+    * @throws IllegalArgumentException if user1 is unknown
+    */
+   public int distance(String user1, String user2) {
+      Snapshot s = snapshot();
+      if (user1.equals(user2))
+         return 0;
+      int source = s.idOf(user1);
+      int destination = s.users.id(user2);
+      if (destination < 0)
+         return Integer.MAX_VALUE;
+      BfsTree tree = s.cachedTree(source);
+      int distance;
+      if (tree != null)
+         distance = tree.distance(destination);
+      else if (!s.reachability().reaches(source, destination))
+         distance = -1;
+      else
+         distance = search(s).distance(source, destination);
+      return distance < 0 ? Integer.MAX_VALUE : distance;
+   }
+
+   /**
+    * Returns a shortest path between two users, in the format of
+    * SocNet.path.
+    *
+    * @param  user1 the starting user
+    * @param  user2 the destination user
+    * @return the users on the path, or [NONE]
+    * @throws IllegalArgumentException if user1 is unknown
+    */
+   public String path(String user1, String user2) {
+      Snapshot s = snapshot();
+      int source = s.idOf(user1);
+      int destination = s.users.id(user2);
+      int[] path;
+      BfsTree tree = s.cachedTree(source);
+      if (destination < 0 || source == destination)
+         path = new int[0];
+      else if (tree != null)
+         path = tree.pathTo(destination);
+      else if (!s.reachability().reaches(source, destination))
+         path = new int[0];
+      else
+         path = search(s).path(source, destination);
+      if (path.length == 0)
+         return "[NONE]";
+      StringBuilder sb = new StringBuilder("[" + user1);
+      for (int element : path)
+         sb.append("|" + s.users.name(element));
+      return sb.append("]").toString();
+   }
+
+   /**
+    * Returns the users a user can reach.
+    *
+    * @param  user the name of the user
+    * @return the reachable users, sorted
+    * @throws IllegalArgumentException if user is unknown
+    */
+   public Set<String> reachable(String user) {
+      Snapshot s = snapshot();
+      BfsTree tree = s.tree(s.idOf(user));
+      Set<String> reachable = new TreeSet<>();
+      for (int v = 0; v < tree.size(); v++) {
+         if (tree.distance(v) > 0)
+            reachable.add(s.users.name(v));
+      }
+      return reachable;
+   }
+
+   /**
+    * Returns the centrality of a user, as SocNet.centrality does.
+    *
+    * @param  user the name of the user
+    * @return the mean distance to all other users, unreachable ones
+    *         counting Integer.MAX_VALUE
+    * @throws IllegalArgumentException if user is unknown
+    */
+   public double centrality(String user) {
+      Snapshot s = snapshot();
+      BfsTree tree = s.tree(s.idOf(user));
+      long missing = tree.size() - tree.reached();
+      return (tree.distanceSum() + missing * Integer.MAX_VALUE) / (double) (tree.size() - 1);
+   }
+
+   /**
+    * Returns the k users followed by the most others.
+    *
+    * @param  k the number of users wanted
+    * @return at most k names, most followed first
+    */
+   public List<String> mostPopular(int k) {
+      Snapshot s = snapshot();
+      List<String> names = new ArrayList<>();
+      for (int v : s.graph.topKByInDegree(k)) {
+         if (s.graph.inDegreeAt(v) == 0)
+            break;
+         names.add(s.users.name(v));
+      }
+      return names;
+   }
+
+   /**
+    * Returns the k users who follow the most others.
+    *
+    * @param  k the number of users wanted
+    * @return at most k names, biggest follower first
+    */
+   public List<String> topFollowers(int k) {
+      Snapshot s = snapshot();
+      List<String> names = new ArrayList<>();
+      for (int v : s.graph.topKByOutDegree(k)) {
+         if (s.graph.degreeAt(v) == 0)
+            break;
+         names.add(s.users.name(v));
+      }
+      return names;
+   }
+
+   /**
+    * Records that one user now follows another.
+    *
+    * @param  user1 the user who follows
+    * @param  user2 the user being followed
+    * @return true if user1 did not follow user2 already
+    */
+   public boolean follow(String user1, String user2) {
+      requests.increment();
+      lock.lock();
+      try {
+         boolean changed = network.follow(user1, user2);
+         if (changed) {
+            changes.add(new Change(true, user1, user2));
+            written++;
+         }
+         return changed;
+      }
+      finally {
+         lock.unlock();
+      }
+   }
+
+   /**
+    * Records that one user no longer follows another.
+    *
+    * @param  user1 the user who follows
+    * @param  user2 the user being followed
+    * @return true if user1 did follow user2
+    */
+   public boolean unfollow(String user1, String user2) {
+      requests.increment();
+      lock.lock();
+      try {
+         boolean changed = network.unfollow(user1, user2);
+         if (changed) {
+            changes.add(new Change(false, user1, user2));
+            written++;
+         }
+         return changed;
+      }
+      finally {
+         lock.unlock();
+      }
+   }
+
+   /**
+    * Runs a request on one of the worker threads.
+    *
+    * @param  request the work to do, such as () -> distance(a, b)
+    * @return the future answer
+    */
+   public <T> CompletableFuture<T> submit(Supplier<T> request) {
+      return CompletableFuture.supplyAsync(request, workers);
+   }
+
+   /**
+    * Returns counts of the work done so far.
+    *
+    * @return the requests served, the searches run, the requests that
+    *         shared another one's search, those answered from a kept
+    *         tree, and the size of the snapshot
+    */
+   public String stats() {
+      Snapshot s = current;
+      return "requests " + requests.sum() + ", searches " + searches.sum()
+         + ", coalesced " + coalesced.sum() + ", cached " + cached.sum()
+         + ", users " + s.graph.vertices()
+         + ", relations " + s.graph.edges();
+   }
+
+   /**
+    * Serves the network over HTTP on the loopback interface.
+    *
+    * @param  port the port to listen on, 0 for any free one
+    * @return the port listened on
+    * @throws IOException if the port cannot be opened
+    * @throws IllegalStateException if the server is already running
+    */
+   public int start(int port) throws IOException {
+      if (server != null)
+         throw new IllegalStateException("Already serving on port " + server.getAddress().getPort());
+      server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+      server.createContext("/", this::handle);
+      server.setExecutor(workers);
+      server.start();
+      return server.getAddress().getPort();
+   }
+
+   /**
+    * Stops the HTTP server, if running, and the worker threads.
+    */
+   public void stop() {
+      if (server != null)
+         server.stop(0);
+      workers.shutdown();
+      try {
+         workers.awaitTermination(10, TimeUnit.SECONDS);
+      }
+      catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+      }
+   }
+
+   /*
+      Returns the snapshot to read from, first publishing a new one if
+      the network changed. With refreshMillis 0 the caller waits until
+      the snapshot holds every change finished so far. Otherwise a stale
+      snapshot is replaced only once it is old enough, by one thread,
+      and the others go on with it meanwhile.
+   */
+   private Snapshot snapshot() {
+      requests.increment();
+      Snapshot s = current;
+      long target = written;
+      if (s.version >= target)
+         return s;
+      if (refreshMillis == 0)
+         refreshing.lock();
+      else if (System.currentTimeMillis() - s.published < refreshMillis || !refreshing.tryLock())
+         return s;
+      try {
+         s = current;
+         if (s.version < target)
+            current = s = next(s);
+      }
+      finally {
+         refreshing.unlock();
+      }
+      return s;
+   }
+
+   /*
+      Returns the calling thread's two-ended search over the graph of s,
+      made anew when the snapshot has changed.
+   */
+   private BidirectionalSearch search(Snapshot s) {
+      BidirectionalSearch search = pathSearch.get();
+      if (search == null || search.graph() != s.graph) {
+         search = new BidirectionalSearch(s.graph);
+         pathSearch.set(search);
+      }
+      searches.increment();
+      return search;
+   }
+
+   /*
+      Builds the snapshot that follows s. Only the changes logged since
+      s are taken under the writers' lock; the new graph is built after
+      it is released.
+   */
+   private Snapshot next(Snapshot s) {
+      Change[] batch;
+      lock.lock();
+      try {
+         // s holds everything before its version, which is not needed again
+         changes.subList(0, (int) (s.version - changesStart)).clear();
+         changesStart = s.version;
+         batch = changes.toArray(new Change[0]);
+      }
+      finally {
+         lock.unlock();
+      }
+
+      // The last change to an edge decides whether it is there
+      UserDictionary users = s.users.copy();
+      Map<Long, Boolean> last = new HashMap<>();
+      for (Change c : batch) {
+         // New users get their ids in the order SocNet.follow gave them
+         int v = c.follow ? users.intern(c.user1) : users.id(c.user1);
+         int w = c.follow ? users.intern(c.user2) : users.id(c.user2);
+         last.put(GraphBuilder.key(v, w), c.follow);
+      }
+      long[] added = new long[last.size()];
+      long[] removed = new long[last.size()];
+      int na = 0;
+      int nr = 0;
+      for (Map.Entry<Long, Boolean> entry : last.entrySet()) {
+         if (entry.getValue())
+            added[na++] = entry.getKey();
+         else
+            removed[nr++] = entry.getKey();
+      }
+      Arrays.sort(added, 0, na);
+      Arrays.sort(removed, 0, nr);
+      // Removing edges never lets anyone reach more, so the index still rules out
+      ReachabilityIndex reachability = na == 0 && users.size() == s.users.size() ? s.index : null;
+      return new Snapshot(merge(s.graph, users.size(), added, na, removed, nr),
+                          users, s.version + batch.length, reachability);
+   }
+
+   /*
+      Returns the graph on n dense vertices whose rows are those of g
+      with the added edges put in and the removed ones left out. Both
+      lists are sorted packed edges.
+   */
+   private static CompactDiGraph merge(CompactDiGraph g, int n, long[] added, int na,
+                                       long[] removed, int nr) {
+      int V = g.vertices();
+      int[] ids = new int[n];
+      int[] offsets = new int[n + 1];
+      int[] targets = new int[g.edges() + na];
+      int k = 0;
+      int a = 0;
+      int r = 0;
+      for (int v = 0; v < n; v++) {
+         ids[v] = v;
+         offsets[v] = k;
+         int i = v < V ? g.firstEdge(v) : 0;
+         int end = v < V ? g.firstEdge(v + 1) : 0;
+         while (i < end || (a < na && GraphBuilder.tail(added[a]) == v)) {
+            int x = i < end ? g.target(i) : Integer.MAX_VALUE;
+            int y = a < na && GraphBuilder.tail(added[a]) == v ? GraphBuilder.head(added[a]) : Integer.MAX_VALUE;
+            int w = Math.min(x, y);
+            if (x == w)
+               i++;
+            if (y == w)
+               a++;
+            long key = GraphBuilder.key(v, w);
+            while (r < nr && removed[r] < key)
+               r++;
+            if (r < nr && removed[r] == key)
+               continue;
+            targets[k++] = w;
+         }
+      }
+      offsets[n] = k;
+      return CompactDiGraph.fromOutEdges(IntStore.wrap(ids), IntStore.wrap(offsets),
+                                         IntStore.wrap(Arrays.copyOf(targets, k)));
+   }
+
+   /*
+      One follow or unfollow that changed the network.
+   */
+   private static class Change {
+      private final boolean follow;
+      private final String user1;
+      private final String user2;
+
+      Change(boolean follow, String user1, String user2) {
+         this.follow = follow;
+         this.user1 = user1;
+         this.user2 = user2;
+      }
+   }
+
+   /*
+      A graph and its user names, never changed once published, and the
+      searches running on them and kept from them.
+   */
+   private class Snapshot {
+      private final CompactDiGraph graph;
+      private final UserDictionary users;
+      private final long version;          // the changes it holds
+      private final long published = System.currentTimeMillis();
+      private final ConcurrentHashMap<Integer, CompletableFuture<BfsTree>> running = new ConcurrentHashMap<>();
+      private final Map<Integer, BfsTree> trees;   // least recently used first, synchronized on itself
+      private volatile ReachabilityIndex index;    // may deny paths this graph has, never the reverse
+
+      Snapshot(CompactDiGraph graph, UserDictionary users, long version, ReachabilityIndex index) {
+         this.graph = graph;
+         this.users = users;
+         this.version = version;
+         this.index = index;
+         // Each tree holds two ints for every user
+         int capacity = (int) Math.max(1, Math.min(1024, TREE_CACHE_BYTES / (8L * Math.max(1, graph.vertices()))));
+         trees = new LinkedHashMap<Integer, BfsTree>(16, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry<Integer, BfsTree> eldest) {
+               return size() > capacity;
+            }
+         };
+      }
+
+      int idOf(String user) {
+         int id = users.id(user);
+         if (id < 0)
+            throw new IllegalArgumentException("Unknown user " + user);
+         return id;
+      }
+
+      /*
+         Returns the kept search tree of a source, or null.
+      */
+      BfsTree cachedTree(int source) {
+         BfsTree tree;
+         synchronized (trees) {
+            tree = trees.get(source);
+         }
+         if (tree != null)
+            cached.increment();
+         return tree;
+      }
+
+      /*
+         Returns the reachability index, building it on first use.
+         Threads that ask meanwhile wait for the one building it.
+      */
+      ReachabilityIndex reachability() {
+         ReachabilityIndex reachability = index;
+         if (reachability != null)
+            return reachability;
+         synchronized (this) {
+            if (index == null)
+               index = new ReachabilityIndex(graph);
+            return index;
+         }
+      }
+
+      /*
+         Returns the search tree of a source, from those kept or by
+         joining a search already running for it if there is one.
+      */
+      BfsTree tree(int source) {
+         BfsTree tree = cachedTree(source);
+         if (tree != null)
+            return tree;
+         CompletableFuture<BfsTree> mine = new CompletableFuture<>();
+         CompletableFuture<BfsTree> other = running.putIfAbsent(source, mine);
+         if (other != null) {
+            coalesced.increment();
+            return other.join();
+         }
+         try {
+            searches.increment();
+            tree = new BfsTree(graph, source);
+            synchronized (trees) {
+               trees.put(source, tree);
+            }
+            mine.complete(tree);
+            return tree;
+         }
+         catch (RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+         }
+         finally {
+            running.remove(source, mine);
+         }
+      }
+   }
+
+   /*
+      Answers one HTTP request with plain text: 200 and the answer,
+      400 for a bad or unknown user, 404 for an unknown path, 405 for
+      the wrong method and 500 if answering failed. The exchange is
+      closed whatever happens, so a failure never leaves the client
+      waiting.
+   */
+   private void handle(HttpExchange exchange) throws IOException {
+      int status = 200;
+      String body;
+      try {
+         Map<String, String> query = parse(exchange.getRequestURI().getRawQuery());
+         String method = exchange.getRequestMethod();
+         String path = exchange.getRequestURI().getPath();
+         boolean write = path.equals("/follow") || path.equals("/unfollow");
+         if (write != method.equals("POST")) {
+            status = 405;
+            body = "Use " + (write ? "POST" : "GET") + " for " + path;
+         }
+         else {
+            switch (path) {
+               case "/distance":
+                  body = String.valueOf(distance(param(query, "from"), param(query, "to")));
+                  break;
+               case "/path":
+                  body = path(param(query, "from"), param(query, "to"));
+                  break;
+               case "/reachable":
+                  body = reachable(param(query, "user")).toString();
+                  break;
+               case "/centrality":
+                  body = String.valueOf(centrality(param(query, "user")));
+                  break;
+               case "/popular":
+                  body = mostPopular(Integer.parseInt(param(query, "k"))).toString();
+                  break;
+               case "/followers":
+                  body = topFollowers(Integer.parseInt(param(query, "k"))).toString();
+                  break;
+               case "/follow":
+                  body = String.valueOf(follow(param(query, "from"), param(query, "to")));
+                  break;
+               case "/unfollow":
+                  body = String.valueOf(unfollow(param(query, "from"), param(query, "to")));
+                  break;
+               case "/stats":
+                  body = stats();
+                  break;
+               default:
+                  status = 404;
+                  body = "Unknown request " + path;
+            }
+         }
+      }
+      catch (IllegalArgumentException e) {
+         // NumberFormatException included
+         status = 400;
+         body = String.valueOf(e.getMessage());
+      }
+      catch (RuntimeException e) {
+         status = 500;
+         body = "Internal error: " + e;
+      }
+      try {
+         byte[] bytes = (body + "\n").getBytes(StandardCharsets.UTF_8);
+         exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+         exchange.sendResponseHeaders(status, bytes.length);
+         try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+         }
+      }
+      finally {
+         exchange.close();
+      }
+   }
+
+   private static Map<String, String> parse(String rawQuery) {
+      Map<String, String> query = new HashMap<>();
+      if (rawQuery == null)
+         return query;
+      for (String pair : rawQuery.split("&")) {
+         int eq = pair.indexOf('=');
+         if (eq < 0)
+            continue;
+         query.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                   URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+      }
+      return query;
+   }
+
+   private static String param(Map<String, String> query, String name) {
+      String value = query.get(name);
+      if (value == null)
+         throw new IllegalArgumentException("Missing parameter " + name);
+      return value;
+   }
+
+   /**
+    * Loads a network from an edge file and serves it until the
+    * process is stopped.
+    *
+    * @param args the edge file, then optionally the port (8080), the
+    *        number of threads (one per processor) and the least
+    *        milliseconds between snapshots (DEFAULT_REFRESH_MILLIS)
+    */
+   public static void main(String[] args) throws IOException {
+      if (args.length < 1) {
+         System.out.println("Usage: java SocNetService file [port] [threads] [refreshMillis]");
+         return;
+      }
+      int port = args.length > 1 ? Integer.parseInt(args[1]) : 8080;
+      int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+      long refreshMillis = args.length > 3 ? Long.parseLong(args[3]) : DEFAULT_REFRESH_MILLIS;
+      SocNetService service = new SocNetService(new SocNet(args[0]), threads, refreshMillis);
+      port = service.start(port);
+      System.out.println("Serving " + args[0] + " on http://127.0.0.1:" + port + "/");
+   }
+}
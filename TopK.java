@@ -0,0 +1,141 @@
+/******************************************************************************
+ *
+ *  Keeps the k best-scoring vertices seen so far.
+ *
+ *  The <tt>TopK</tt> class is a bounded min-heap over primitive arrays:
+ *  the worst of the k kept vertices sits at the root, so each new vertex
+ *  is compared with it once and costs O(log k) only if it gets in.
+ *  A higher score ranks first; on equal scores the smaller vertex does.
+ *  After clear() the same instance can rank again without allocating.
+ *
+ */
+
+public class TopK {
+   private final int k;
+   private final int[] ids;
+   private final double[] scores;
+   private int size;
+
+   /**
+    * Initializes an empty ranking that keeps at most k vertices
+    *
+    * @param  k the number of vertices to keep
+    * @throws IllegalArgumentException if k is negative
+    */
+   public TopK(int k) {
+      if (k < 0)
+         throw new IllegalArgumentException("Negative k " + k);
+      this.k = k;
+      ids = new int[k];
+      scores = new double[k];
+   }
+
+   /**
+    * Forgets every vertex offered so far.
+    */
+   public void clear() {
+      size = 0;
+   }
+
+   /**
+    * Returns the number of vertices kept, at most k.
+    *
+    * @return the number of vertices kept
+    */
+   public int size() {
+      return size;
+   }
+
+   /**
+    * Offers a vertex with its score.
+    *
+    * @param id the vertex
+    * @param score the score of the vertex
+    */
+   public void offer(int id, double score) {
+      if (size < k) {
+         ids[size] = id;
+         scores[size] = score;
+         up(size++);
+      }
+      else if (k > 0 && worse(ids[0], scores[0], id, score)) {
+         ids[0] = id;
+         scores[0] = score;
+         down(0);
+      }
+   }
+
+   /**
+    * Returns the kept vertices, best first, and empties the ranking.
+    *
+    * @return the vertices in decreasing order of score
+    */
+   public int[] drain() {
+      int[] result = new int[size];
+      drain(result);
+      return result;
+   }
+
+   /**
+    * Copies the kept vertices, best first, into an array and empties
+    * the ranking, without allocating.
+    *
+    * @param  result the array to fill from position 0
+    * @return the number of vertices copied
+    * @throws IllegalArgumentException if result is shorter than size()
+    */
+   public int drain(int[] result) {
+      if (result.length < size)
+         throw new IllegalArgumentException("Array shorter than " + size + " vertices");
+      int count = size;
+      // Removing the root repeatedly yields the worst vertex first
+      for (int i = size - 1; i >= 0; i--) {
+         result[i] = ids[0];
+         size--;
+         ids[0] = ids[size];
+         scores[0] = scores[size];
+         down(0);
+      }
+      return count;
+   }
+
+   /*
+      Checks whether vertex a with score sa ranks below vertex b with score sb.
+   */
+   private static boolean worse(int a, double sa, int b, double sb) {
+      return sa < sb || (sa == sb && a > b);
+   }
+
+   private void up(int i) {
+      while (i > 0) {
+         int parent = (i - 1) / 2;
+         if (!worse(ids[i], scores[i], ids[parent], scores[parent]))
+            return;
+         swap(i, parent);
+         i = parent;
+      }
+   }
+
+   private void down(int i) {
+      while (true) {
+         int least = i;
+         for (int child = 2 * i + 1; child <= 2 * i + 2 && child < size; child++) {
+            if (worse(ids[child], scores[child], ids[least], scores[least]))
+               least = child;
+         }
+         if (least == i)
+            return;
+         swap(i, least);
+         i = least;
+      }
+   }
+
+   private void swap(int i, int j) {
+      int id = ids[i];
+      ids[i] = ids[j];
+      ids[j] = id;
+      double score = scores[i];
+      scores[i] = scores[j];
+      scores[j] = score;
+   }
+}
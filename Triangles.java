@@ -0,0 +1,362 @@
+/******************************************************************************
+ *
+ *  Reciprocity, triangles and clustering of a graph, by intersecting
+ *  sorted neighbor lists in parallel.
+ *
+ *  The <tt>Triangles</tt> class treats the graph as undirected for
+ *  triangles: u and w are neighbors if either edge u-w or w-u is there,
+ *  and self-loops are left out. Vertices are ranked by degree and then
+ *  by index. The work takes four passes over vertex ranges, each split
+ *  over the common fork/join pool:
+ *  - merging the sorted out-row and in-row of each vertex gives its
+ *    undirected degree and, from the values in both rows, the number of
+ *    its edges that are returned;
+ *  - the degrees give every vertex a row of that length, and merging
+ *    again fills it with the neighbors ranked below the vertex and then
+ *    those ranked above, each part sorted;
+ *  - every triangle is found exactly once, at its lowest vertex, by
+ *    intersecting the upper part of its row with the upper part of each
+ *    neighbor in it. The vertex counts it for itself, and for each of
+ *    the other two corners against the edge that leads there, in a slot
+ *    next to that edge in its own row;
+ *  - every vertex adds up the slots that lower neighbors keep for the
+ *    edges up to it, finding each edge by binary search.
+ *  Ranking by degree keeps every upper part short, about sqrt(E) at
+ *  most, so the hubs of a power-law graph cost little. Two rows of
+ *  similar length are intersected by merging. When one is much shorter,
+ *  it gallops through the other with exponential search.
+ *  Each pass needs all of the one before: where a neighbor goes depends
+ *  on its final degree, the third pass reads the rows of other vertices,
+ *  and the fourth their finished slots. In return no task ever writes
+ *  outside its own range of vertices, so all tasks share one array of
+ *  counts, and one slot per edge, with nothing contended or added up
+ *  afterwards.
+ *  Vertices are the dense indices of a CompactDiGraph.
+ *
+ */
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+public class Triangles {
+   private static final int GALLOP = 32;   // the length ratio from which to gallop
+   private static final int DEGREES = 0;
+   private static final int FILL = 1;
+   private static final int INTERSECT = 2;
+   private static final int CREDIT = 3;
+   private final CompactDiGraph g;
+   private final int V;
+   private final int[] degree;        // undirected, without self-loops
+   private final int[] offsets;       // the row of each vertex in rows
+   private final int[] firstHigher;   // where the upper part of each row starts
+   private final int[] rows;          // the neighbors ranked lower, then higher
+   private final int[] slotShift;     // rows index minus slots index, per upper part
+   private final int[] slots;         // per edge up, the triangles found at its tail through its head
+   private final long[] triangles;
+   private final long reciprocal;
+   private final long total;
+
+   /**
+    * Counts the reciprocal edges and the triangles of a graph.
+    *
+    * @param  g the graph, with each row sorted
+    * @throws IllegalArgumentException if the graph has too many
+    *         undirected edges to hold in an array
+    */
+   public Triangles(CompactDiGraph g) {
+      this.g = g;
+      V = g.vertices();
+      degree = new int[V];
+      offsets = new int[V + 1];
+      firstHigher = new int[V];
+      slotShift = new int[V];
+      triangles = new long[V];
+      int leaf = Math.max(256, V / (64 * ForkJoinPool.getCommonPoolParallelism()));
+      ForkJoinPool pool = ForkJoinPool.commonPool();
+
+      reciprocal = pool.invoke(new Pass(this, DEGREES, 0, V, leaf));
+      long size = 0;
+      for (int v = 0; v < V; v++) {
+         offsets[v] = (int) size;
+         size += degree[v];
+         if (size > Integer.MAX_VALUE - 8)
+            throw new IllegalArgumentException("Too many edges: " + size / 2);
+      }
+      offsets[V] = (int) size;
+      rows = new int[(int) size];
+      pool.invoke(new Pass(this, FILL, 0, V, leaf));
+      int up = 0;
+      for (int v = 0; v < V; v++) {
+         slotShift[v] = firstHigher[v] - up;
+         up += offsets[v + 1] - firstHigher[v];
+      }
+      slots = new int[up];
+      total = pool.invoke(new Pass(this, INTERSECT, 0, V, leaf));
+      pool.invoke(new Pass(this, CREDIT, 0, V, leaf));
+   }
+
+   /**
+    * Returns the number of edges v-w for which w-v is an edge too.
+    * A self-loop is its own reverse.
+    *
+    * @return the number of reciprocal edges
+    */
+   public long reciprocalEdges() {
+      return reciprocal;
+   }
+
+   /**
+    * Returns the fraction of edges that are returned.
+    *
+    * @return the reciprocal edges divided by all edges
+    */
+   public double reciprocity() {
+      return (double) reciprocal / g.edges();
+   }
+
+   /**
+    * Returns the number of triangles in the graph.
+    *
+    * @return the number of sets of three vertices that are all neighbors
+    */
+   public long triangles() {
+      return total;
+   }
+
+   /**
+    * Returns the number of triangles a vertex is in.
+    *
+    * @param  v the dense index
+    * @return the number of triangles through v
+    */
+   public long triangles(int v) {
+      return triangles[v];
+   }
+
+   /**
+    * Returns the number of neighbors of a vertex, ignoring direction.
+    *
+    * @param  v the dense index
+    * @return the number of vertices other than v with an edge to or from v
+    */
+   public int degree(int v) {
+      return degree[v];
+   }
+
+   /**
+    * Returns the local clustering coefficient of a vertex: the fraction
+    * of pairs of its neighbors that are neighbors themselves.
+    *
+    * @param  v the dense index
+    * @return the coefficient, 0 if v has fewer than two neighbors
+    */
+   public double clustering(int v) {
+      long d = degree[v];
+      return d < 2 ? 0 : 2.0 * triangles[v] / (d * (d - 1));
+   }
+
+   /**
+    * Returns the average of the local clustering coefficients.
+    *
+    * @return the mean coefficient over all vertices, 0 if there are none
+    */
+   public double averageClustering() {
+      double sum = 0;
+      for (int v = 0; v < V; v++)
+         sum += clustering(v);
+      return V == 0 ? 0 : sum / V;
+   }
+
+   /*
+      One pass over a range of vertices. Returns the sum of what the
+      pass counted.
+   */
+   @SuppressWarnings("serial")
+   private static class Pass extends RecursiveTask<Long> {
+      private final Triangles t;
+      private final int phase;
+      private final int from;
+      private final int to;
+      private final int leaf;
+
+      Pass(Triangles t, int phase, int from, int to, int leaf) {
+         this.t = t;
+         this.phase = phase;
+         this.from = from;
+         this.to = to;
+         this.leaf = leaf;
+      }
+
+      protected Long compute() {
+         if (to - from <= leaf) {
+            long sum = 0;
+            for (int v = from; v < to; v++)
+               sum += phase == INTERSECT ? t.intersectRows(v)
+                    : phase == CREDIT ? t.credit(v) : t.visit(phase, v);
+            return sum;
+         }
+         int mid = (from + to) >>> 1;
+         Pass left = new Pass(t, phase, from, mid, leaf);
+         left.fork();
+         long right = new Pass(t, phase, mid, to, leaf).compute();
+         return left.join() + right;
+      }
+   }
+
+   private long visit(int phase, int v) {
+      // Walk the out-row and the in-row of v together, both sorted
+      int i = g.firstEdge(v);
+      int iEnd = g.firstEdge(v + 1);
+      int j = g.firstInEdge(v);
+      int jEnd = g.firstInEdge(v + 1);
+      int low = offsets[v];
+      int high = phase == FILL ? offsets[v + 1] : 0;
+      long count = 0;
+      while (i < iEnd || j < jEnd) {
+         int a = i < iEnd ? g.target(i) : Integer.MAX_VALUE;
+         int b = j < jEnd ? g.source(j) : Integer.MAX_VALUE;
+         int w = Math.min(a, b);
+         if (a == w)
+            i++;
+         if (b == w)
+            j++;
+         if (phase == DEGREES) {
+            if (a == b)
+               count++;
+            if (w != v)
+               degree[v]++;
+         }
+         else if (w != v) {
+            // The upper part is filled from the back and turned around below
+            if (ranksAbove(w, v))
+               rows[--high] = w;
+            else
+               rows[low++] = w;
+         }
+      }
+      if (phase == FILL) {
+         firstHigher[v] = low;
+         for (int end = offsets[v + 1] - 1; low < end; low++, end--) {
+            int swap = rows[low];
+            rows[low] = rows[end];
+            rows[end] = swap;
+         }
+      }
+      return count;
+   }
+
+   private boolean ranksAbove(int w, int v) {
+      return degree[w] > degree[v] || (degree[w] == degree[v] && w > v);
+   }
+
+   /*
+      Finds the triangles whose lowest vertex is v and counts them in
+      triangles[v] and in the slots of the upper part of v. Returns how
+      many there were.
+   */
+   private long intersectRows(int v) {
+      int high = firstHigher[v];
+      int end = offsets[v + 1];
+      long found = 0;
+      for (int k = high; k < end; k++) {
+         int u = rows[k];
+         int n = intersect(high, end, firstHigher[u], offsets[u + 1], slotShift[v]);
+         slots[k - slotShift[v]] += n;
+         found += n;
+      }
+      triangles[v] = found;
+      return found;
+   }
+
+   /*
+      Adds to triangles[v] the triangles whose lowest vertex is a lower
+      neighbor of v.
+   */
+   private long credit(int v) {
+      long found = 0;
+      for (int k = offsets[v], high = firstHigher[v]; k < high; k++) {
+         int u = rows[k];
+         int slot = lowerBound(firstHigher[u], offsets[u + 1], v);
+         found += slots[slot - slotShift[u]];
+      }
+      triangles[v] += found;
+      return 0;
+   }
+
+   /*
+      Counts the values two sorted runs of rows share. Each one found
+      also counts in the slot of its place in the first run, which is
+      shifted by shift.
+   */
+   private int intersect(int i, int iEnd, int j, int jEnd, int shift) {
+      int n = 0;
+      if ((long) (iEnd - i) * GALLOP < jEnd - j) {
+         // Each value of the short run is looked up ahead in the long one
+         for (; i < iEnd && j < jEnd; i++) {
+            j = gallop(j, jEnd, rows[i]);
+            if (j < jEnd && rows[j] == rows[i]) {
+               slots[i - shift]++;
+               n++;
+               j++;
+            }
+         }
+         return n;
+      }
+      if ((long) (jEnd - j) * GALLOP < iEnd - i) {
+         for (; j < jEnd && i < iEnd; j++) {
+            i = gallop(i, iEnd, rows[j]);
+            if (i < iEnd && rows[i] == rows[j]) {
+               slots[i - shift]++;
+               n++;
+               i++;
+            }
+         }
+         return n;
+      }
+      while (i < iEnd && j < jEnd) {
+         int x = rows[i];
+         int y = rows[j];
+         if (x < y)
+            i++;
+         else if (x > y)
+            j++;
+         else {
+            slots[i - shift]++;
+            n++;
+            i++;
+            j++;
+         }
+      }
+      return n;
+   }
+
+   /*
+      Returns the first position from lo up to hi whose value is not
+      less than x, or hi, probing 1, 2, 4 and so on places ahead before
+      searching between the last two probes.
+   */
+   private int gallop(int lo, int hi, int x) {
+      int from = lo;
+      int to = lo;
+      for (int step = 1; to < hi && rows[to] < x; step <<= 1) {
+         from = to + 1;
+         to += step;
+      }
+      return lowerBound(from, Math.min(to, hi), x);
+   }
+
+   /*
+      Returns the first position from lo up to hi whose value is not
+      less than x, or hi.
+   */
+   private int lowerBound(int lo, int hi, int x) {
+      while (lo < hi) {
+         int mid = (lo + hi) >>> 1;
+         if (rows[mid] < x)
+            lo = mid + 1;
+         else
+            hi = mid;
+      }
+      return lo;
+   }
+}
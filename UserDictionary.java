@@ -0,0 +1,324 @@
+/******************************************************************************
+ *
+ *  Gives every user name a dense id, 0 for the first name seen, 1 for the
+ *  next, and so on.
+ *
+ *  The <tt>UserDictionary</tt> class replaces String.hashCode as a vertex
+ *  number: two names never share an id, and because the ids run from 0
+ *  to size()-1 they can index plain arrays. The names are not kept as
+ *  String objects. They are copied, one after another, into a single
+ *  char[] table, and an open-addressing hash table of ids finds a name
+ *  again.
+ *  compress() can shrink the table further by front coding: the names
+ *  are sorted and cut into blocks of 16, and each name in a block is
+ *  stored as the length of the prefix it shares with the name before it
+ *  plus the rest of its characters. Lookups then binary search the first
+ *  name of each block. Adding a new name undoes the compression.
+ *
+ */
+
+import java.util.Arrays;
+
+public class UserDictionary {
+   private static final int BLOCK = 16;
+   private int size;
+
+   // Plain form: names back to back, and a hash table of ids
+   private char[] pool;
+   private int[] starts;      // starts[id] .. starts[id+1] is the name of id
+   private int[] hashes;      // String.hashCode of each name
+   private int[] table;       // ids by hash, -1 marks an empty slot
+
+   // Front-coded form, used instead of the above after compress()
+   private char[] coded;      // per name: shared prefix length, suffix length, suffix
+   private int[] blockStarts; // position in coded of the first name of each block
+   private int[] sortedIds;   // id of each name in sorted order
+   private int[] ranks;       // position of each id in sorted order
+
+   /**
+    * Initializes an empty dictionary
+    */
+   public UserDictionary() {
+      pool = new char[256];
+      starts = new int[17];
+      hashes = new int[16];
+      table = new int[32];
+      Arrays.fill(table, -1);
+   }
+
+   /*
+      Copies every array of another dictionary.
+   */
+   private UserDictionary(UserDictionary other) {
+      size = other.size;
+      pool = other.pool == null ? null : other.pool.clone();
+      starts = other.starts == null ? null : other.starts.clone();
+      hashes = other.hashes == null ? null : other.hashes.clone();
+      table = other.table == null ? null : other.table.clone();
+      coded = other.coded == null ? null : other.coded.clone();
+      blockStarts = other.blockStarts == null ? null : other.blockStarts.clone();
+      sortedIds = other.sortedIds == null ? null : other.sortedIds.clone();
+      ranks = other.ranks == null ? null : other.ranks.clone();
+   }
+
+   /**
+    * Returns a copy of this dictionary that later names added here do
+    * not affect. A copy that is never added to can be read by any
+    * number of threads at once.
+    *
+    * @return a copy with the same names and ids
+    */
+   public UserDictionary copy() {
+      return new UserDictionary(this);
+   }
+
+   /**
+    * Returns the number of names in this dictionary.
+    *
+    * @return the number of names, which is also one more than the largest id
+    */
+   public int size() {
+      return size;
+   }
+
+   /**
+    * Returns the id of a name, giving it the next free id if it is new.
+    *
+    * @param  name the name
+    * @return the id of the name
+    * @throws IllegalArgumentException if the name is longer than 65535 characters
+    */
+   public int intern(String name) {
+      int id = id(name);
+      if (id >= 0)
+         return id;
+      if (name.length() > Character.MAX_VALUE)
+         throw new IllegalArgumentException("Name too long: " + name.length() + " characters");
+      if (coded != null)
+         expand();
+
+      if (size == hashes.length) {
+         hashes = Arrays.copyOf(hashes, 2 * size);
+         starts = Arrays.copyOf(starts, 2 * size + 1);
+      }
+      int end = starts[size];
+      if (end + name.length() > pool.length)
+         pool = Arrays.copyOf(pool, Math.max(2 * pool.length, end + name.length()));
+      name.getChars(0, name.length(), pool, end);
+      starts[size + 1] = end + name.length();
+      hashes[size] = name.hashCode();
+      id = size++;
+      if (2 * size > table.length)
+         rehash(2 * table.length);
+      else
+         place(id);
+      return id;
+   }
+
+   /**
+    * Returns the id of a name, without adding it.
+    *
+    * @param  name the name
+    * @return the id of the name, or -1 if it is not in the dictionary
+    */
+   public int id(String name) {
+      if (coded != null)
+         return codedId(name);
+      int hash = name.hashCode();
+      int mask = table.length - 1;
+      for (int slot = IntIndexMap.hash(hash) & mask; table[slot] >= 0; slot = (slot + 1) & mask) {
+         int id = table[slot];
+         if (hashes[id] == hash && matches(id, name))
+            return id;
+      }
+      return -1;
+   }
+
+   /**
+    * Returns the name with the given id.
+    *
+    * @param  id the id, between 0 and size()-1
+    * @return the name of id
+    * @throws IllegalArgumentException if there is no such id
+    */
+   public String name(int id) {
+      if (id < 0 || id >= size)
+         throw new IllegalArgumentException("Invalid id " + id);
+      if (coded != null)
+         return decode(ranks[id]);
+      return new String(pool, starts[id], starts[id + 1] - starts[id]);
+   }
+
+   /**
+    * Checks whether the names are currently front coded.
+    *
+    * @return true after compress() and before the next new name
+    */
+   public boolean isCompressed() {
+      return coded != null;
+   }
+
+   /**
+    * Front codes the names in sorted blocks and drops the hash table.
+    * Ids do not change. Useful once a network is fully loaded, since
+    * names that share long prefixes are then stored only once.
+    */
+   public void compress() {
+      if (coded != null)
+         return;
+      String[] names = new String[size];
+      Integer[] order = new Integer[size];
+      for (int id = 0; id < size; id++) {
+         names[id] = name(id);
+         order[id] = id;
+      }
+      Arrays.sort(order, (a, b) -> names[a].compareTo(names[b]));
+
+      sortedIds = new int[size];
+      ranks = new int[size];
+      blockStarts = new int[(size + BLOCK - 1) / BLOCK];
+      char[] out = new char[Math.max(16, starts[size] + 2 * size)];
+      int k = 0;
+      String previous = "";
+      for (int r = 0; r < size; r++) {
+         int id = order[r];
+         sortedIds[r] = id;
+         ranks[id] = r;
+         String name = names[id];
+         // The first name of each block is stored whole
+         int shared = 0;
+         if (r % BLOCK == 0)
+            blockStarts[r / BLOCK] = k;
+         else
+            shared = sharedPrefix(previous, name);
+         out[k++] = (char) shared;
+         out[k++] = (char) (name.length() - shared);
+         name.getChars(shared, name.length(), out, k);
+         k += name.length() - shared;
+         previous = name;
+      }
+      coded = Arrays.copyOf(out, k);
+      pool = null;
+      starts = null;
+      hashes = null;
+      table = null;
+   }
+
+   /*
+      Rebuilds the plain form from the front-coded one.
+   */
+   private void expand() {
+      int n = size;
+      String[] names = new String[n];
+      for (int id = 0; id < n; id++)
+         names[id] = name(id);
+      coded = null;
+      blockStarts = null;
+      sortedIds = null;
+      ranks = null;
+      size = 0;
+      pool = new char[256];
+      starts = new int[Math.max(17, n + 1)];
+      hashes = new int[Math.max(16, n)];
+      table = new int[32];
+      Arrays.fill(table, -1);
+      for (String name : names)
+         intern(name);
+   }
+
+   /*
+      Checks whether the stored name of id equals the given name.
+   */
+   private boolean matches(int id, String name) {
+      int from = starts[id];
+      if (starts[id + 1] - from != name.length())
+         return false;
+      for (int i = 0; i < name.length(); i++) {
+         if (pool[from + i] != name.charAt(i))
+            return false;
+      }
+      return true;
+   }
+
+   private void place(int id) {
+      int mask = table.length - 1;
+      int slot = IntIndexMap.hash(hashes[id]) & mask;
+      while (table[slot] >= 0)
+         slot = (slot + 1) & mask;
+      table[slot] = id;
+   }
+
+   private void rehash(int capacity) {
+      table = new int[capacity];
+      Arrays.fill(table, -1);
+      for (int id = 0; id < size; id++)
+         place(id);
+   }
+
+   /*
+      Decodes the name at the given position of the sorted order by
+      replaying its block from the first name.
+   */
+   private String decode(int rank) {
+      StringBuilder name = new StringBuilder();
+      int k = blockStarts[rank / BLOCK];
+      for (int r = rank - rank % BLOCK; r <= rank; r++) {
+         int shared = coded[k];
+         int rest = coded[k + 1];
+         name.setLength(shared);
+         name.append(coded, k + 2, rest);
+         k += 2 + rest;
+      }
+      return name.toString();
+   }
+
+   /*
+      Finds a name in the front-coded form: a binary search over the
+      first names of the blocks, then a scan of one block.
+   */
+   private int codedId(String name) {
+      int lo = 0;
+      int hi = blockStarts.length - 1;
+      while (lo <= hi) {
+         int mid = (lo + hi) >>> 1;
+         int k = blockStarts[mid];
+         int cmp = compareCoded(k + 2, coded[k + 1], name);
+         if (cmp <= 0)
+            lo = mid + 1;
+         else
+            hi = mid - 1;
+      }
+      if (hi < 0)
+         return -1;
+      // name can only be in block hi
+      int first = hi * BLOCK;
+      int last = Math.min(size, first + BLOCK) - 1;
+      for (int r = first; r <= last; r++) {
+         String candidate = decode(r);
+         int cmp = candidate.compareTo(name);
+         if (cmp == 0)
+            return sortedIds[r];
+         if (cmp > 0)
+            return -1;
+      }
+      return -1;
+   }
+
+   private int compareCoded(int from, int length, String name) {
+      int n = Math.min(length, name.length());
+      for (int i = 0; i < n; i++) {
+         int diff = coded[from + i] - name.charAt(i);
+         if (diff != 0)
+            return diff;
+      }
+      return length - name.length();
+   }
+
+   private static int sharedPrefix(String a, String b) {
+      int n = Math.min(a.length(), b.length());
+      int i = 0;
+      while (i < n && a.charAt(i) == b.charAt(i))
+         i++;
+      return i;
+   }
+}
@@ -0,0 +1,114 @@
+/******************************************************************************
+ *
+ *  Checks AdjacencySet and IntBitmap against a TreeSet.
+ *
+ *  The <tt>AdjacencySetTest</tt> class grows sets past the point where
+ *  an AdjacencySet turns into an IntBitmap, and a bitmap container past
+ *  the point where it turns into a bit array, then shrinks them back
+ *  below both, comparing every answer with a TreeSet on the way. Values
+ *  are drawn from a dense block, to fill one container, and from a wide
+ *  range with negative numbers, to spread over many.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+public class AdjacencySetTest {
+
+   public static void main(String[] args) {
+      Random random = new Random(4);
+      for (int trial = 0; trial < 6; trial++) {
+         AdjacencySet set = new AdjacencySet();
+         AdjacencySet other = new AdjacencySet();
+         IntBitmap bitmap = new IntBitmap();
+         TreeSet<Integer> expected = new TreeSet<>();
+         TreeSet<Integer> otherExpected = new TreeSet<>();
+         // Grow past both limits, then shrink below both
+         int target = 6000 + random.nextInt(2000);
+         while (expected.size() < target) {
+            int v = draw(random, trial);
+            boolean added = expected.add(v);
+            check(set.add(v) == added, "add " + v);
+            check(bitmap.add(v) == added, "bitmap add " + v);
+            if (random.nextInt(3) == 0) {
+               int w = draw(random, trial);
+               check(other.add(w) == otherExpected.add(w), "add " + w + " to other");
+            }
+            if (random.nextInt(50) == 0)
+               addRun(other, otherExpected, random, trial);
+            if (expected.size() % 997 == 0)
+               compare(set, other, bitmap, expected, otherExpected);
+         }
+         compare(set, other, bitmap, expected, otherExpected);
+         List<Integer> values = new ArrayList<>(expected);
+         while (expected.size() > AdjacencySet.SMALL_LIMIT / 4) {
+            int v = values.get(random.nextInt(values.size()));
+            boolean removed = expected.remove(v);
+            check(set.remove(v) == removed, "remove " + v);
+            check(bitmap.remove(v) == removed, "bitmap remove " + v);
+            if (expected.size() % 499 == 0)
+               compare(set, other, bitmap, expected, otherExpected);
+         }
+         compare(set, other, bitmap, expected, otherExpected);
+      }
+      System.out.println("AdjacencySetTest passed");
+   }
+
+   /*
+      Adds a sorted run of values, some already in the set, and checks
+      that the new ones come back in order at the front of the run.
+   */
+   private static void addRun(AdjacencySet set, TreeSet<Integer> expected, Random random, int trial) {
+      TreeSet<Integer> run = new TreeSet<>();
+      int size = random.nextInt(300);
+      while (run.size() < size)
+         run.add(draw(random, trial));
+      int[] values = new int[run.size() + 2];
+      int k = 1;
+      for (int v : run)
+         values[k++] = v;
+      List<Integer> fresh = new ArrayList<>();
+      for (int v : run) {
+         if (expected.add(v))
+            fresh.add(v);
+      }
+      int added = set.addAllSorted(values, 1, k);
+      check(added == fresh.size(), "run added " + added + " " + fresh.size());
+      for (int i = 0; i < added; i++)
+         check(values[1 + i] == fresh.get(i), "run value " + i);
+   }
+
+   private static int draw(Random random, int trial) {
+      if (trial % 2 == 0)
+         return 70000 + random.nextInt(9000);
+      return random.nextInt(400000) - 200000;
+   }
+
+   private static void compare(AdjacencySet set, AdjacencySet other, IntBitmap bitmap,
+                               TreeSet<Integer> expected, TreeSet<Integer> otherExpected) {
+      check(set.size() == expected.size(), "size " + set.size() + " " + expected.size());
+      check(bitmap.size() == expected.size(), "bitmap size");
+      List<Integer> seen = new ArrayList<>();
+      set.forEach(seen::add);
+      check(seen.equals(new ArrayList<>(expected)), "set order");
+      seen.clear();
+      bitmap.forEach(seen::add);
+      check(seen.equals(new ArrayList<>(expected)), "bitmap order");
+      for (int v : otherExpected) {
+         check(set.contains(v) == expected.contains(v), "contains " + v);
+         check(bitmap.contains(v) == expected.contains(v), "bitmap contains " + v);
+      }
+      TreeSet<Integer> common = new TreeSet<>(expected);
+      common.retainAll(otherExpected);
+      check(set.intersectionSize(other) == common.size(), "intersection");
+      check(other.intersectionSize(set) == common.size(), "intersection reversed");
+   }
+
+   private static void check(boolean condition, String message) {
+      if (!condition)
+         throw new AssertionError(message);
+   }
+}
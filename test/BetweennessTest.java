@@ -0,0 +1,123 @@
+/******************************************************************************
+ *
+ *  Checks Betweenness against the definition.
+ *
+ *  The <tt>BetweennessTest</tt> class counts the shortest paths between
+ *  every pair of vertices of small random graphs and adds up, for each
+ *  vertex, the share of them it lies on. v is on a shortest s-t path
+ *  when d(s,v) + d(v,t) = d(s,t), and sigma(s,v) * sigma(v,t) of the
+ *  sigma(s,t) paths go through it. Distances come from one plain
+ *  queue-based search per source.
+ *
+ */
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class BetweennessTest {
+
+   public static void main(String[] args) {
+      Random random = new Random(3);
+      for (int trial = 0; trial < 40; trial++) {
+         int V = 1 + random.nextInt(30);
+         int E = random.nextInt(3 * V + 1);
+         GraphBuilder builder = new GraphBuilder();
+         for (int v = 0; v < V; v++)
+            builder.addVertex(v);
+         for (int e = 0; e < E; e++)
+            builder.addEdge(random.nextInt(V), random.nextInt(V));
+         CompactDiGraph g = builder.build();
+         int[][] dist = new int[V][];
+         double[][] sigma = new double[V][];
+         for (int s = 0; s < V; s++) {
+            dist[s] = distances(g, s);
+            sigma[s] = paths(g, dist[s], s);
+         }
+         double[] expected = new double[V];
+         for (int s = 0; s < V; s++) {
+            for (int t = 0; t < V; t++) {
+               if (s == t || dist[s][t] < 0)
+                  continue;
+               for (int v = 0; v < V; v++) {
+                  if (v != s && v != t && dist[s][v] >= 0 && dist[v][t] >= 0
+                        && dist[s][v] + dist[v][t] == dist[s][t])
+                     expected[v] += sigma[s][v] * sigma[v][t] / sigma[s][t];
+               }
+            }
+         }
+
+         Betweenness exact = new Betweenness(g);
+         Betweenness full = new Betweenness(g, V, 7);
+         check(exact.isExact() && full.isExact(), "a full sample is exact");
+         for (int v = 0; v < V; v++) {
+            double tolerance = 1e-9 * (1 + expected[v]);
+            check(Math.abs(exact.centrality(v) - expected[v]) < tolerance, "betweenness of " + v);
+            check(Math.abs(full.centrality(v) - expected[v]) < tolerance, "full sample of " + v);
+         }
+
+         if (V > 2) {
+            Betweenness sampled = new Betweenness(g, V / 2, trial);
+            check(!sampled.isExact() && sampled.samples() == V / 2, "sample size");
+            for (int v = 0; v < V; v++) {
+               check(sampled.centrality(v) >= 0 && sampled.standardError(v) >= 0,
+                                "sampled values of " + v);
+            }
+         }
+      }
+      System.out.println("BetweennessTest passed");
+   }
+
+   /*
+      Counts the shortest paths from s to every vertex, level by level.
+   */
+   private static double[] paths(CompactDiGraph g, int[] dist, int s) {
+      int V = g.vertices();
+      double[] sigma = new double[V];
+      sigma[s] = 1;
+      int depth = 0;
+      for (int d : dist)
+         depth = Math.max(depth, d);
+      for (int level = 0; level < depth; level++) {
+         for (int v = 0; v < V; v++) {
+            if (dist[v] != level)
+               continue;
+            for (int k = g.firstEdge(v); k < g.firstEdge(v + 1); k++) {
+               int w = g.target(k);
+               if (dist[w] == level + 1)
+                  sigma[w] += sigma[v];
+            }
+         }
+      }
+      return sigma;
+   }
+
+   /*
+      The distance from s to every vertex, -1 where a vertex cannot be
+      reached.
+   */
+   private static int[] distances(CompactDiGraph g, int s) {
+      int[] dist = new int[g.vertices()];
+      Arrays.fill(dist, -1);
+      int[] queue = new int[g.vertices()];
+      int head = 0;
+      int tail = 0;
+      dist[s] = 0;
+      queue[tail++] = s;
+      while (head < tail) {
+         int v = queue[head++];
+         for (int k = g.firstEdge(v); k < g.firstEdge(v + 1); k++) {
+            int w = g.target(k);
+            if (dist[w] < 0) {
+               dist[w] = dist[v] + 1;
+               queue[tail++] = w;
+            }
+         }
+      }
+      return dist;
+   }
+
+   private static void check(boolean condition, String message) {
+      if (!condition)
+         throw new AssertionError(message);
+   }
+}
@@ -0,0 +1,92 @@
+/******************************************************************************
+ *
+ *  Checks BidirectionalSearch against a naive breadth-first search.
+ *
+ *  The <tt>BidirectionalSearchTest</tt> class asks for the distance and
+ *  a path between every pair of vertices of small random graphs, and
+ *  checks the distances against one plain search per source and every
+ *  path for its length, its edges and its end.
+ *
+ */
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class BidirectionalSearchTest {
+
+   public static void main(String[] args) {
+      Random random = new Random(15);
+      for (int trial = 0; trial < 60; trial++) {
+         // From sparse enough to leave many vertices unreachable to dense
+         int V = 1 + random.nextInt(80);
+         int E = random.nextInt(4 * V + 1);
+         GraphBuilder builder = new GraphBuilder();
+         for (int v = 0; v < V; v++)
+            builder.addVertex(v);
+         for (int e = 0; e < E; e++)
+            builder.addEdge(random.nextInt(V), random.nextInt(V));
+         CompactDiGraph g = builder.build();
+         int[][] dist = new int[V][];
+         for (int s = 0; s < V; s++)
+            dist[s] = distances(g, s);
+         compare(g, dist);
+      }
+      System.out.println("BidirectionalSearchTest passed");
+   }
+
+   private static void compare(CompactDiGraph g, int[][] dist) {
+      BidirectionalSearch search = new BidirectionalSearch(g);
+      for (int s = 0; s < dist.length; s++) {
+         for (int t = 0; t < dist.length; t++) {
+            check(search.distance(s, t) == dist[s][t], "distance " + s + "-" + t);
+            int[] path = search.path(s, t);
+            int expected = s == t || dist[s][t] < 0 ? 0 : dist[s][t];
+            check(path.length == expected, "path length " + s + "-" + t);
+            int v = s;
+            for (int w : path) {
+               check(hasEdge(g, v, w), "path edge " + v + "-" + w);
+               v = w;
+            }
+            check(path.length == 0 || v == t, "path end " + s + "-" + t);
+         }
+      }
+   }
+
+   private static boolean hasEdge(CompactDiGraph g, int v, int w) {
+      for (int k = g.firstEdge(v); k < g.firstEdge(v + 1); k++) {
+         if (g.target(k) == w)
+            return true;
+      }
+      return false;
+   }
+
+   /*
+      The distance from s to every vertex by a plain queue-based
+      search, -1 where a vertex cannot be reached.
+   */
+   private static int[] distances(CompactDiGraph g, int s) {
+      int[] dist = new int[g.vertices()];
+      Arrays.fill(dist, -1);
+      int[] queue = new int[g.vertices()];
+      int head = 0;
+      int tail = 0;
+      dist[s] = 0;
+      queue[tail++] = s;
+      while (head < tail) {
+         int v = queue[head++];
+         for (int k = g.firstEdge(v); k < g.firstEdge(v + 1); k++) {
+            int w = g.target(k);
+            if (dist[w] < 0) {
+               dist[w] = dist[v] + 1;
+               queue[tail++] = w;
+            }
+         }
+      }
+      return dist;
+   }
+
+   private static void check(boolean condition, String message) {
+      if (!condition)
+         throw new AssertionError(message);
+   }
+}
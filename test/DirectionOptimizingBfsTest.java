@@ -0,0 +1,83 @@
+/******************************************************************************
+ *
+ *  Checks DirectionOptimizingBfs against a naive breadth-first search.
+ *
+ *  The <tt>DirectionOptimizingBfsTest</tt> class searches from every
+ *  vertex of small random graphs, dense enough at times for the
+ *  bottom-up steps to run, and compares the distances, the number of
+ *  vertices reached and the depth with one plain search per source.
+ *
+ */
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class DirectionOptimizingBfsTest {
+
+   public static void main(String[] args) {
+      Random random = new Random(16);
+      for (int trial = 0; trial < 60; trial++) {
+         // From sparse enough to leave many vertices unreachable to dense
+         int V = 1 + random.nextInt(80);
+         int E = random.nextInt(4 * V + 1);
+         GraphBuilder builder = new GraphBuilder();
+         for (int v = 0; v < V; v++)
+            builder.addVertex(v);
+         for (int e = 0; e < E; e++)
+            builder.addEdge(random.nextInt(V), random.nextInt(V));
+         CompactDiGraph g = builder.build();
+         int[][] dist = new int[V][];
+         for (int s = 0; s < V; s++)
+            dist[s] = distances(g, s);
+         compare(g, dist);
+      }
+      System.out.println("DirectionOptimizingBfsTest passed");
+   }
+
+   private static void compare(CompactDiGraph g, int[][] dist) {
+      DirectionOptimizingBfs search = new DirectionOptimizingBfs(g);
+      for (int s = 0; s < dist.length; s++) {
+         int[] found = search.search(s);
+         check(Arrays.equals(Arrays.copyOf(found, dist.length), dist[s]), "distances from " + s);
+         int reached = 0;
+         int depth = 0;
+         for (int d : dist[s]) {
+            if (d >= 0)
+               reached++;
+            depth = Math.max(depth, d);
+         }
+         check(search.reached() == reached, "reached from " + s);
+         check(search.depth() == depth, "depth from " + s);
+      }
+   }
+
+   /*
+      The distance from s to every vertex by a plain queue-based
+      search, -1 where a vertex cannot be reached.
+   */
+   private static int[] distances(CompactDiGraph g, int s) {
+      int[] dist = new int[g.vertices()];
+      Arrays.fill(dist, -1);
+      int[] queue = new int[g.vertices()];
+      int head = 0;
+      int tail = 0;
+      dist[s] = 0;
+      queue[tail++] = s;
+      while (head < tail) {
+         int v = queue[head++];
+         for (int k = g.firstEdge(v); k < g.firstEdge(v + 1); k++) {
+            int w = g.target(k);
+            if (dist[w] < 0) {
+               dist[w] = dist[v] + 1;
+               queue[tail++] = w;
+            }
+         }
+      }
+      return dist;
+   }
+
+   private static void check(boolean condition, String message) {
+      if (!condition)
+         throw new AssertionError(message);
+   }
+}
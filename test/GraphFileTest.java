@@ -0,0 +1,120 @@
+/******************************************************************************
+ *
+ *  Checks that GraphFile reads back what it wrote, in both versions of
+ *  the format.
+ *
+ *  The <tt>GraphFileTest</tt> class saves random graphs with and without
+ *  names and compares the opened copy with the original, edges both
+ *  ways included. It also writes version 1 files by hand, which have no
+ *  in-edges, and checks that opening one rebuilds them.
+ *
+ */
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+public class GraphFileTest {
+
+   public static void main(String[] args) throws IOException {
+      Random random = new Random(6);
+      File file = File.createTempFile("graphfile", ".bin");
+      file.deleteOnExit();
+      String filename = file.getPath();
+      for (int trial = 0; trial < 20; trial++) {
+         int V = random.nextInt(60);
+         DiGraph g = new DiGraph();
+         // Sparse, negative and repeated vertex values
+         int[] values = new int[V];
+         for (int i = 0; i < V; i++) {
+            values[i] = random.nextInt(2000) - 1000;
+            g.addVertex(values[i]);
+         }
+         for (int e = 0; V > 0 && e < 3 * V; e++)
+            g.addEdge(values[random.nextInt(V)], values[random.nextInt(V)]);
+         CompactDiGraph expected = CompactDiGraph.copyOf(g);
+         boolean names = trial % 2 == 0;
+
+         GraphFile.write(filename, g, names ? GraphFileTest::name : null);
+         compare(expected, GraphFile.open(filename), names);
+
+         writeVersion1(filename, expected, names);
+         compare(expected, GraphFile.open(filename), names);
+      }
+      System.out.println("GraphFileTest passed");
+   }
+
+   private static String name(int v) {
+      return "user" + v + (v < 0 ? "\u00e9" : "");
+   }
+
+   private static void compare(CompactDiGraph expected, GraphFile file, boolean names) {
+      CompactDiGraph g = file.graph();
+      int V = expected.vertices();
+      check(g.vertices() == V && g.edges() == expected.edges(), "counts");
+      check(file.hasNames() == names, "names flag");
+      for (int i = 0; i < V; i++) {
+         check(g.vertexAt(i) == expected.vertexAt(i), "vertex " + i);
+         check(g.degreeAt(i) == expected.degreeAt(i), "degree " + i);
+         check(g.inDegreeAt(i) == expected.inDegreeAt(i), "in-degree " + i);
+         for (int k = g.firstEdge(i); k < g.firstEdge(i + 1); k++)
+            check(g.target(k) == expected.target(k), "edge " + k);
+         for (int k = g.firstInEdge(i); k < g.firstInEdge(i + 1); k++)
+            check(g.source(k) == expected.source(k), "in-edge " + k);
+         if (names)
+            check(file.name(g.vertexAt(i)).equals(name(g.vertexAt(i))), "name " + i);
+      }
+      file.close();
+      check(!file.hasNames(), "names closed");
+   }
+
+   /*
+      Writes a graph in the first version of the format: the same
+      header, ids, offsets and targets, no in-edges.
+   */
+   private static void writeVersion1(String filename, CompactDiGraph g, boolean names) throws IOException {
+      int V = g.vertices();
+      byte[][] encoded = new byte[V][];
+      int total = 0;
+      for (int i = 0; i < V; i++) {
+         encoded[i] = name(g.vertexAt(i)).getBytes(StandardCharsets.UTF_8);
+         total += encoded[i].length;
+      }
+      try (DataOutputStream out = new DataOutputStream(
+            new BufferedOutputStream(new FileOutputStream(filename)))) {
+         out.writeInt(0x44494752);
+         out.writeInt(1);
+         out.writeInt(names ? 1 : 0);
+         out.writeInt(V);
+         out.writeInt(g.edges());
+         out.writeInt(names ? total : 0);
+         out.writeInt(0);
+         out.writeInt(0);
+         for (int i = 0; i < V; i++)
+            out.writeInt(g.vertexAt(i));
+         for (int i = 0; i <= V; i++)
+            out.writeInt(g.firstEdge(i));
+         for (int k = 0; k < g.edges(); k++)
+            out.writeInt(g.target(k));
+         if (names) {
+            int offset = 0;
+            out.writeInt(offset);
+            for (byte[] name : encoded) {
+               offset += name.length;
+               out.writeInt(offset);
+            }
+            for (byte[] name : encoded)
+               out.write(name);
+         }
+      }
+   }
+
+   private static void check(boolean condition, String message) {
+      if (!condition)
+         throw new AssertionError(message);
+   }
+}
@@ -0,0 +1,87 @@
+/******************************************************************************
+ *
+ *  Checks MultiSourceBfs against a naive breadth-first search.
+ *
+ *  The <tt>MultiSourceBfsTest</tt> class sums the distances from every
+ *  vertex of small random graphs, at widths of one and two longs per
+ *  vertex, and compares the sums and the number of vertices reached with
+ *  one plain search per source.
+ *
+ */
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class MultiSourceBfsTest {
+
+   public static void main(String[] args) {
+      Random random = new Random(17);
+      for (int trial = 0; trial < 60; trial++) {
+         // From sparse enough to leave many vertices unreachable to dense
+         int V = 1 + random.nextInt(80);
+         int E = random.nextInt(4 * V + 1);
+         GraphBuilder builder = new GraphBuilder();
+         for (int v = 0; v < V; v++)
+            builder.addVertex(v);
+         for (int e = 0; e < E; e++)
+            builder.addEdge(random.nextInt(V), random.nextInt(V));
+         CompactDiGraph g = builder.build();
+         int[][] dist = new int[V][];
+         for (int s = 0; s < V; s++)
+            dist[s] = distances(g, s);
+         compare(g, dist);
+      }
+      System.out.println("MultiSourceBfsTest passed");
+   }
+
+   private static void compare(CompactDiGraph g, int[][] dist) {
+      int V = dist.length;
+      long[] sums = new long[V];
+      int[] reached = new int[V];
+      for (int width = 1; width <= 2; width++) {
+         MultiSourceBfs.distanceSums(g, width, sums, reached);
+         for (int s = 0; s < V; s++) {
+            long sum = 0;
+            int count = 0;
+            for (int d : dist[s]) {
+               if (d >= 0) {
+                  sum += d;
+                  count++;
+               }
+            }
+            check(sums[s] == sum, "distance sum from " + s + " at width " + width);
+            check(reached[s] == count, "reached from " + s + " at width " + width);
+         }
+      }
+   }
+
+   /*
+      The distance from s to every vertex by a plain queue-based
+      search, -1 where a vertex cannot be reached.
+   */
+   private static int[] distances(CompactDiGraph g, int s) {
+      int[] dist = new int[g.vertices()];
+      Arrays.fill(dist, -1);
+      int[] queue = new int[g.vertices()];
+      int head = 0;
+      int tail = 0;
+      dist[s] = 0;
+      queue[tail++] = s;
+      while (head < tail) {
+         int v = queue[head++];
+         for (int k = g.firstEdge(v); k < g.firstEdge(v + 1); k++) {
+            int w = g.target(k);
+            if (dist[w] < 0) {
+               dist[w] = dist[v] + 1;
+               queue[tail++] = w;
+            }
+         }
+      }
+      return dist;
+   }
+
+   private static void check(boolean condition, String message) {
+      if (!condition)
+         throw new AssertionError(message);
+   }
+}
@@ -0,0 +1,77 @@
+/******************************************************************************
+ *
+ *  Checks ReachabilityIndex against a naive breadth-first search.
+ *
+ *  The <tt>ReachabilityIndexTest</tt> class asks whether each vertex of
+ *  small random graphs reaches each other one, and whether the two share
+ *  a strongly connected component, and compares both answers with one
+ *  plain search per source.
+ *
+ */
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class ReachabilityIndexTest {
+
+   public static void main(String[] args) {
+      Random random = new Random(20);
+      for (int trial = 0; trial < 60; trial++) {
+         // From sparse enough to leave many vertices unreachable to dense
+         int V = 1 + random.nextInt(80);
+         int E = random.nextInt(4 * V + 1);
+         GraphBuilder builder = new GraphBuilder();
+         for (int v = 0; v < V; v++)
+            builder.addVertex(v);
+         for (int e = 0; e < E; e++)
+            builder.addEdge(random.nextInt(V), random.nextInt(V));
+         CompactDiGraph g = builder.build();
+         int[][] dist = new int[V][];
+         for (int s = 0; s < V; s++)
+            dist[s] = distances(g, s);
+         compare(g, dist);
+      }
+      System.out.println("ReachabilityIndexTest passed");
+   }
+
+   private static void compare(CompactDiGraph g, int[][] dist) {
+      ReachabilityIndex index = new ReachabilityIndex(g);
+      for (int v = 0; v < dist.length; v++) {
+         for (int w = 0; w < dist.length; w++) {
+            check(index.reaches(v, w) == dist[v][w] >= 0, "reaches " + v + "-" + w);
+            boolean strong = dist[v][w] >= 0 && dist[w][v] >= 0;
+            check((index.component(v) == index.component(w)) == strong, "component " + v + "-" + w);
+         }
+      }
+   }
+
+   /*
+      The distance from s to every vertex by a plain queue-based
+      search, -1 where a vertex cannot be reached.
+   */
+   private static int[] distances(CompactDiGraph g, int s) {
+      int[] dist = new int[g.vertices()];
+      Arrays.fill(dist, -1);
+      int[] queue = new int[g.vertices()];
+      int head = 0;
+      int tail = 0;
+      dist[s] = 0;
+      queue[tail++] = s;
+      while (head < tail) {
+         int v = queue[head++];
+         for (int k = g.firstEdge(v); k < g.firstEdge(v + 1); k++) {
+            int w = g.target(k);
+            if (dist[w] < 0) {
+               dist[w] = dist[v] + 1;
+               queue[tail++] = w;
+            }
+         }
+      }
+      return dist;
+   }
+
+   private static void check(boolean condition, String message) {
+      if (!condition)
+         throw new AssertionError(message);
+   }
+}
@@ -0,0 +1,111 @@
+/******************************************************************************
+ *
+ *  Checks that follow and unfollow keep reciprocity and the leaders up
+ *  to date.
+ *
+ *  The <tt>SocNetTest</tt> class loads a small network, asks for its
+ *  reciprocity and leaders so that both start being kept incrementally,
+ *  and then makes random changes, new users included. After every
+ *  change both answers are compared with values worked out from a plain
+ *  set of the relations. The same is then done on a network opened from
+ *  a saved binary file, which is read-only until its first change.
+ *
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+public class SocNetTest {
+
+   public static void main(String[] args) throws IOException {
+      Random random = new Random(7);
+      File edges = File.createTempFile("socnet", ".txt");
+      File saved = File.createTempFile("socnet", ".bin");
+      edges.deleteOnExit();
+      saved.deleteOnExit();
+      for (int trial = 0; trial < 10; trial++) {
+         Set<List<String>> relations = new HashSet<>();
+         Set<String> names = new TreeSet<>();
+         try (PrintWriter out = new PrintWriter(edges)) {
+            for (int e = 0; e < 20; e++) {
+               String a = user(random, 8);
+               String b = user(random, 8);
+               out.println(a + " " + b);
+               relations.add(List.of(a, b));
+               names.add(a);
+               names.add(b);
+            }
+         }
+         SocNet network = new SocNet(edges.getPath());
+         change(network, relations, names, random);
+         network.save(saved.getPath());
+         change(SocNet.open(saved.getPath()), relations, names, random);
+      }
+      System.out.println("SocNetTest passed");
+   }
+
+   private static String user(Random random, int n) {
+      return "u" + random.nextInt(n);
+   }
+
+   /*
+      Makes random changes to a network and to the matching set of
+      relations, checking the network after each one.
+   */
+   private static void change(SocNet network, Set<List<String>> relations, Set<String> names,
+                              Random random) {
+      compare(network, relations, names);
+      for (int op = 0; op < 300; op++) {
+         // Now and then a user joins, which raises the bar for leaders
+         String a = user(random, op % 50 == 0 ? 12 : 8);
+         String b = user(random, 8);
+         if (random.nextInt(5) < 3) {
+            names.add(a);
+            names.add(b);
+            check(network.follow(a, b) == relations.add(List.of(a, b)), "follow " + a + " " + b);
+         }
+         else {
+            check(network.unfollow(a, b) == relations.remove(List.of(a, b)), "unfollow " + a + " " + b);
+         }
+         compare(network, relations, names);
+      }
+   }
+
+   private static void compare(SocNet network, Set<List<String>> relations, Set<String> names) {
+      long reciprocal = 0;
+      Set<String> leaders = new TreeSet<>();
+      for (List<String> relation : relations) {
+         if (relations.contains(List.of(relation.get(1), relation.get(0))))
+            reciprocal++;
+      }
+      for (String name : names) {
+         int followers = 0;
+         int following = 0;
+         for (List<String> relation : relations) {
+            if (relation.get(1).equals(name))
+               followers++;
+            if (relation.get(0).equals(name))
+               following++;
+         }
+         if (followers >= 0.3 * names.size() && followers > following)
+            leaders.add(name);
+      }
+      if (!relations.isEmpty()) {
+         double expected = (double) reciprocal / relations.size();
+         check(Math.abs(network.reciprocity() - expected) < 1e-12,
+               "reciprocity " + network.reciprocity() + " " + expected);
+      }
+      check(network.leaders().equals(leaders), "leaders " + network.leaders() + " " + leaders);
+   }
+
+   private static void check(boolean condition, String message) {
+      if (!condition)
+         throw new AssertionError(message);
+   }
+}
@@ -0,0 +1,77 @@
+/******************************************************************************
+ *
+ *  Checks Triangles against counting by brute force.
+ *
+ *  The <tt>TrianglesTest</tt> class tries every set of three vertices of
+ *  small random graphs, ignoring direction and self-loops, and every
+ *  edge for its reverse.
+ *
+ */
+
+import java.util.Random;
+
+public class TrianglesTest {
+
+   public static void main(String[] args) {
+      Random random = new Random(2);
+      for (int trial = 0; trial < 60; trial++) {
+         int V = 1 + random.nextInt(40);
+         // Up to about half of all pairs, so some vertices hold many triangles
+         int E = random.nextInt(V * V / 2 + 1);
+         GraphBuilder builder = new GraphBuilder();
+         for (int v = 0; v < V; v++)
+            builder.addVertex(v);
+         for (int e = 0; e < E; e++)
+            builder.addEdge(random.nextInt(V), random.nextInt(V));
+         CompactDiGraph g = builder.build();
+         boolean[][] linked = new boolean[V][V];
+         long reciprocal = 0;
+         for (int v = 0; v < V; v++) {
+            for (int k = g.firstEdge(v); k < g.firstEdge(v + 1); k++) {
+               int w = g.target(k);
+               for (int j = g.firstEdge(w); j < g.firstEdge(w + 1); j++) {
+                  if (g.target(j) == v)
+                     reciprocal++;
+               }
+               if (v != w)
+                  linked[v][w] = linked[w][v] = true;
+            }
+         }
+         long[] perVertex = new long[V];
+         long total = 0;
+         for (int a = 0; a < V; a++) {
+            for (int b = a + 1; b < V; b++) {
+               for (int c = b + 1; c < V; c++) {
+                  if (linked[a][b] && linked[b][c] && linked[a][c]) {
+                     total++;
+                     perVertex[a]++;
+                     perVertex[b]++;
+                     perVertex[c]++;
+                  }
+               }
+            }
+         }
+
+         Triangles t = new Triangles(g);
+         check(t.triangles() == total, "triangles in trial " + trial);
+         check(t.reciprocalEdges() == reciprocal, "reciprocal edges in trial " + trial);
+         for (int v = 0; v < V; v++) {
+            int degree = 0;
+            for (int w = 0; w < V; w++) {
+               if (linked[v][w])
+                  degree++;
+            }
+            check(t.triangles(v) == perVertex[v], "triangles at " + v);
+            check(t.degree(v) == degree, "degree of " + v);
+            double clustering = degree < 2 ? 0 : 2.0 * perVertex[v] / ((long) degree * (degree - 1));
+            check(Math.abs(t.clustering(v) - clustering) < 1e-12, "clustering of " + v);
+         }
+      }
+      System.out.println("TrianglesTest passed");
+   }
+
+   private static void check(boolean condition, String message) {
+      if (!condition)
+         throw new AssertionError(message);
+   }
+}
@@ -0,0 +1,80 @@
+/******************************************************************************
+ *
+ *  Checks that UserDictionary keeps every name and id through front
+ *  coding.
+ *
+ *  The <tt>UserDictionaryTest</tt> class fills a dictionary with names
+ *  that share long prefixes, as generated user names do, and with some
+ *  that share none, then compresses it and checks every lookup both
+ *  ways, looks up names that are not there, and adds names again after
+ *  compressing.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class UserDictionaryTest {
+
+   public static void main(String[] args) {
+      Random random = new Random(5);
+      for (int trial = 0; trial < 20; trial++) {
+         UserDictionary users = new UserDictionary();
+         List<String> names = new ArrayList<>();
+         int n = random.nextInt(300);
+         while (names.size() < n) {
+            String name = name(random);
+            int id = users.intern(name);
+            if (id == names.size())
+               names.add(name);
+            else
+               check(names.get(id).equals(name), "repeated name " + name);
+         }
+         users.compress();
+         check(users.isCompressed(), "compressed");
+         check(users, names, random);
+
+         // A new name undoes the compression and gets the next id
+         String extra = "zz-" + trial;
+         check(users.intern(extra) == names.size(), "id after compress");
+         names.add(extra);
+         check(!users.isCompressed(), "expanded");
+         check(users, names, random);
+         users.compress();
+         check(users, names, random);
+      }
+      System.out.println("UserDictionaryTest passed");
+   }
+
+   private static String name(Random random) {
+      switch (random.nextInt(4)) {
+         case 0:
+            return "user" + random.nextInt(500);
+         case 1:
+            return "verylongcommonprefix_" + random.nextInt(100) + "_" + random.nextInt(3);
+         case 2:
+            return "" + (char) ('a' + random.nextInt(26));
+         default:
+            return "u\u00e9\u4e16" + random.nextInt(50);
+      }
+   }
+
+   private static void check(UserDictionary users, List<String> names, Random random) {
+      check(users.size() == names.size(), "size");
+      for (int id = 0; id < names.size(); id++) {
+         check(users.name(id).equals(names.get(id)), "name of " + id);
+         check(users.id(names.get(id)) == id, "id of " + names.get(id));
+      }
+      for (int i = 0; i < 50; i++) {
+         String missing = name(random) + "#";
+         check(users.id(missing) == -1, "missing " + missing);
+      }
+      check(users.id("") == -1, "empty name");
+   }
+
+   private static void check(boolean condition, String message) {
+      if (!condition)
+         throw new AssertionError(message);
+   }
+}